@@ -2,39 +2,133 @@ package com.example.gpt_sovits_demo;
 
 import android.content.Context;
 import android.content.Intent;
-import android.media.MediaPlayer;
 import android.net.Uri;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.FileProvider;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class AudioAdapter extends RecyclerView.Adapter<AudioAdapter.ViewHolder> {
-    private final List<AudioItem> audioItems;
+    /**
+     * Persists changes the user makes in the list.
+     */
+    public interface Listener {
+        void onDelete(AudioItem item);
+
+        void onMove(AudioItem moved, AudioItem displaced);
+
+        void onSelectionChanged(int count);
+    }
+
+    private List<AudioItem> audioItems = new ArrayList<>();
+    private final Set<Long> selected = new HashSet<>();
     private final Context context;
-    private MediaPlayer mediaPlayer = null;
+    private final Listener listener;
+    private final PlaybackEngine playbackEngine;
+    private final WaveformCache waveformCache;
+    private final Executor waveformExecutor;
+    // Entries shown in a row right now; waveforms of rows scrolled past before their turn are skipped
+    private final Set<Long> shown = ConcurrentHashMap.newKeySet();
 
-    public AudioAdapter(Context context, List<AudioItem> audioItems) {
+    /**
+     * Waveforms that are not in memory yet are loaded on {@code waveformExecutor}.
+     */
+    public AudioAdapter(Context context, PlaybackEngine playbackEngine, WaveformCache waveformCache, Executor waveformExecutor,
+                        Listener listener) {
         this.context = context;
-        this.audioItems = audioItems;
+        this.playbackEngine = playbackEngine;
+        this.waveformCache = waveformCache;
+        this.waveformExecutor = waveformExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the shown items, animating only the rows that were added, removed, moved or changed.
+     */
+    public void submitList(List<AudioItem> items) {
+        List<AudioItem> oldItems = audioItems;
+        List<AudioItem> newItems = new ArrayList<>(items);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).id == newItems.get(newPosition).id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).hasSameContents(newItems.get(newPosition));
+            }
+        });
+        audioItems = newItems;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * The checked items in the order they are shown.
+     */
+    public List<AudioItem> getSelectedItems() {
+        List<AudioItem> items = new ArrayList<>();
+        for (AudioItem item : audioItems) {
+            if (selected.contains(item.id)) items.add(item);
+        }
+        return items;
+    }
+
+    public void clearSelection() {
+        selected.clear();
+        notifyItemRangeChanged(0, audioItems.size());
+        listener.onSelectionChanged(0);
+    }
+
+    static void share(Context context, File audioFile) {
+        Uri uri = FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", audioFile);
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("audio/*");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startActivity(Intent.createChooser(shareIntent, "Share audio via"));
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
+        CheckBox select;
         TextView name;
+        WaveformView waveform;
         Button play, stop, share, delete;
+        long boundId;
 
         public ViewHolder(View view) {
             super(view);
+            select = view.findViewById(R.id.selectBox);
             name = view.findViewById(R.id.audioName);
+            waveform = view.findViewById(R.id.waveform);
             play = view.findViewById(R.id.playBtn);
             stop = view.findViewById(R.id.stopBtn);
             share = view.findViewById(R.id.shareBtn);
@@ -50,58 +144,84 @@ public class AudioAdapter extends RecyclerView.Adapter<AudioAdapter.ViewHolder>
 
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         AudioItem item = audioItems.get(position);
-        holder.name.setText(item.displayName);
-
-        holder.play.setOnClickListener(v -> {
-            if (mediaPlayer != null) {
-                mediaPlayer.stop();
-                mediaPlayer.release();
-            }
-            mediaPlayer = MediaPlayer.create(context, Uri.fromFile(new File(item.filePath)));
-            mediaPlayer.start();
+        holder.select.setOnCheckedChangeListener(null);
+        holder.select.setChecked(selected.contains(item.id));
+        holder.select.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (isChecked) selected.add(item.id);
+            else selected.remove(item.id);
+            listener.onSelectionChanged(selected.size());
         });
+        holder.name.setText(item.durationMillis > 0
+                ? String.format(Locale.US, "%s (%.1f s)", item.displayName, item.durationMillis / 1000.0)
+                : item.displayName);
+        bindWaveform(holder, item);
 
-        holder.stop.setOnClickListener(v -> {
-            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-                mediaPlayer.release();
-                mediaPlayer = null;
-            }
+        // Decoding starts as soon as the finger touches the button, the click only has to play it
+        holder.play.setOnTouchListener((v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) playbackEngine.prefetch(new File(item.filePath));
+            return false;
         });
+        holder.play.setOnClickListener(v -> playbackEngine.play(new File(item.filePath), null));
+
+        holder.stop.setOnClickListener(v -> playbackEngine.stop());
 
         holder.share.setOnClickListener(v -> {
             File audioFile = new File(item.filePath);
-            if (audioFile.exists()) {
-                Uri uri = FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", audioFile);
-                Intent shareIntent = new Intent(Intent.ACTION_SEND);
-                shareIntent.setType("audio/*");
-                shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
-                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                context.startActivity(Intent.createChooser(shareIntent, "Share audio via"));
-            }
+            if (audioFile.exists()) share(context, audioFile);
         });
 
         holder.delete.setOnClickListener(v -> {
-            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-                mediaPlayer.release();
-                mediaPlayer = null;
-            }
-            new File(item.filePath).delete();
+            playbackEngine.stop();
+            playbackEngine.invalidate(new File(item.filePath));
             int pos = holder.getAdapterPosition();
             if (pos != RecyclerView.NO_POSITION && pos < audioItems.size()) {
                 audioItems.remove(pos);
                 notifyItemRemoved(pos);
+                listener.onDelete(item);
+                if (selected.remove(item.id)) listener.onSelectionChanged(selected.size());
             }
         });
     }
 
+    /**
+     * Shows the waveform of {@code item} if it is in memory, and otherwise loads it in the
+     * background and shows it if the row still holds the same item by then.
+     */
+    private void bindWaveform(ViewHolder holder, AudioItem item) {
+        if (holder.boundId != item.id) shown.remove(holder.boundId);
+        holder.boundId = item.id;
+        shown.add(item.id);
+        Waveform waveform = waveformCache.getCached(item.id);
+        holder.waveform.setWaveform(waveform);
+        if (waveform != null) return;
+
+        File file = new File(item.filePath);
+        waveformExecutor.execute(() -> {
+            if (!shown.contains(item.id)) return;
+            Waveform loaded = waveformCache.load(item.id, file, item.samples);
+            if (loaded == null) return;
+            holder.waveform.post(() -> {
+                if (holder.boundId == item.id) holder.waveform.setWaveform(loaded);
+            });
+        });
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        shown.remove(holder.boundId);
+        holder.boundId = 0;
+        holder.waveform.setWaveform(null);
+    }
+
     public int getItemCount() {
         return audioItems.size();
     }
 
     public void onItemMove(int fromPosition, int toPosition) {
+        AudioItem moved = audioItems.get(fromPosition);
+        AudioItem displaced = audioItems.get(toPosition);
         Collections.swap(audioItems, fromPosition, toPosition);
         notifyItemMoved(fromPosition, toPosition);
+        listener.onMove(moved, displaced);
     }
 }
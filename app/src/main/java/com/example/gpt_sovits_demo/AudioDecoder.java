@@ -0,0 +1,105 @@
+package com.example.gpt_sovits_demo;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Decodes a history clip to mono float samples: WAV files directly, anything else (FLAC, MP3)
+ * through {@link MediaCodec}.
+ */
+final class AudioDecoder {
+    private static final long TIMEOUT_US = 10_000;
+
+    private AudioDecoder() {
+    }
+
+    static AudioClip decode(File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".wav")) return WavReader.read(file);
+
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(file.getAbsolutePath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("No audio track in " + file.getName());
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            int encoding = AudioFormat.ENCODING_PCM_16BIT;
+            float[] samples = new float[sampleRate];
+            int count = 0;
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (in >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    if (outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)) {
+                        encoding = outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING);
+                    }
+                } else if (out >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(out).order(ByteOrder.nativeOrder());
+                    buffer.position(info.offset).limit(info.offset + info.size);
+                    int bytesPerSample = encoding == AudioFormat.ENCODING_PCM_FLOAT ? 4 : 2;
+                    int frames = info.size / (bytesPerSample * channels);
+                    if (count + frames > samples.length) {
+                        samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + frames));
+                    }
+                    for (int i = 0; i < frames; i++) {
+                        float sum = 0;
+                        for (int c = 0; c < channels; c++) {
+                            sum += encoding == AudioFormat.ENCODING_PCM_FLOAT ? buffer.getFloat() : buffer.getShort() / 32768f;
+                        }
+                        samples[count++] = sum / channels;
+                    }
+                    codec.releaseOutputBuffer(out, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+                }
+            }
+            return new AudioClip(Arrays.copyOf(samples, count), sampleRate);
+        } catch (IllegalStateException e) {
+            throw new IOException("Failed to decode " + file.getName(), e);
+        } finally {
+            if (codec != null) codec.release();
+            extractor.release();
+        }
+    }
+}
@@ -3,12 +3,31 @@ package com.example.gpt_sovits_demo;
 import java.io.File;
 
 public class AudioItem {
-    public String filePath;
-    public String displayName;
+    public final long id;
+    public final String filePath;
+    public final String displayName;
+    public final String text;
+    public final Lang lang;
+    public final long samples;
+    public final long durationMillis;
+    public final long size;
+    public final long created;
     public boolean isPlaying = false;
 
-    public AudioItem(String filePath) {
-        this.filePath = filePath;
-        this.displayName = new File(filePath).getName();
+    public AudioItem(HistoryIndex.Entry entry) {
+        this.id = entry.id;
+        this.filePath = entry.path;
+        this.displayName = new File(entry.path).getName();
+        this.text = entry.text;
+        this.lang = entry.lang;
+        this.samples = entry.samples;
+        this.durationMillis = entry.getDurationMillis();
+        this.size = entry.size;
+        this.created = entry.created;
+    }
+
+    boolean hasSameContents(AudioItem other) {
+        return filePath.equals(other.filePath) && text.equals(other.text) && lang == other.lang
+                && durationMillis == other.durationMillis && size == other.size;
     }
 }
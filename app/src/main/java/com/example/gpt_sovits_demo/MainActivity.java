@@ -1,16 +1,23 @@
 package com.example.gpt_sovits_demo;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.InputType;
 import android.text.TextWatcher;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -18,7 +25,9 @@ import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -27,51 +36,90 @@ import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class MainActivity extends AppCompatActivity {
-    public enum Lang {
-        YUE,
-        ZH,
-        EN
-    }
+    private static final int SAMPLE_RATE = 32000;
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int RUN_GAP_MS = 80;
+    private static final Map<Lang, String> WARM_UP_TEXT = Map.of(Lang.YUE, "你好。", Lang.ZH, "你好。", Lang.EN, "Hello.");
 
     static {
         System.loadLibrary("gpt_sovits_demo_jni");
+        CoreLog.setSink((priority, tag, message, error) ->
+                Log.println(priority, tag, error != null ? message + "\n" + Log.getStackTraceString(error) : message));
     }
 
-    private native long initModel(
+    // Used through NativeTtsEngine. The native side does not use the receiver, so these are static
+    static native long initModel(
             String g2pWPath, String g2pEnPath, String vitsPath, String sslPath,
             String t2sEncoderPath, String t2sFsDecoderPath, String t2sSDecoderPath, String bertPath
     );
 
-    private native boolean processReferenceSync(long modelHandle, String refAudioPath, String refText, long langId);
+    static native boolean processReferenceSync(long modelHandle, String refAudioPath, String refText, long langId);
 
-    private native float[] runInferenceSync(long modelHandle, String text, long langId);
+    static native float[] runInferenceSync(long modelHandle, String text, long langId);
 
-    private native void freeModel(long modelHandle);
+    static native void freeModel(long modelHandle);
 
 
     private SharedPreferences pref;
-    private MediaPlayer mediaPlayer;
-    private Map<Lang, Long> modelHandles;
+    private PlaybackEngine playbackEngine;
+    private ModelPool modelPool;
+    private ResultCache resultCache;
     private ActivityResultLauncher<Intent> folderPicker;
     private String selectedModelFolder;
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private List<AudioItem> audioItems = new ArrayList<>();
+    private ModelStager modelStager;
+    private TtsEngine engine;
+    private ModelManager modelManager;
+    private ModelManager.Listener modelListener;
+    private TtsRuntime runtime;
+    private HistoryRecorder historyRecorder;
+    private HistoryRecorder.Listener historyListener;
+    private HistoryStore historyStore;
+    private ProgressBar loadProgress;
+    private TextView status;
+    private InferenceScheduler<Lang> scheduler;
+    private ExecutorService ioExecutor;
+    private ActivityResultLauncher<String[]> scriptPicker;
+    private CompletableFuture<Void> batchFuture;
+    private final Object batchPoolLock = new Object();
+    private WorkerPool batchPool;
+    private Lang batchPoolLang;
+    private volatile boolean batchStopped;
+    private HistoryIndex historyIndex;
+    private ExecutorService historyExecutor;
+    private volatile int historyLimit = HISTORY_PAGE_SIZE;
     private AudioAdapter audioAdapter;
+    private WaveformCache waveformCache;
+    private final ExecutorService waveformExecutor = Executors.newSingleThreadExecutor();
+    private final ClipMerger clipMerger = new ClipMerger(AudioDecoder::decode);
+    private final TextSegmenter textSegmenter = new TextSegmenter(12);
+    private final TextFrontEnd textFrontEnd = new TextFrontEnd(64);
+    private final Map<Lang, AtomicLong> interactiveRequests = new EnumMap<>(Lang.class);
+    private Metrics metrics;
+    private TextView statsPanel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -87,14 +135,78 @@ public class MainActivity extends AppCompatActivity {
 
 
         pref = getSharedPreferences("PAInference", MODE_PRIVATE);
-        mediaPlayer = new MediaPlayer();
-        modelHandles = new HashMap<>(3);
+        for (Lang lang : Lang.values()) interactiveRequests.put(lang, new AtomicLong());
+        try {
+            textFrontEnd.setRules(pref.getString("frontEndRules", ""));
+        } catch (IllegalArgumentException e) {
+            Log.e("MainActivity", "Ignoring language rules: " + e.getMessage());
+        }
+        // Models belong to the process, so a recreated activity finds them still loaded
+        runtime = TtsRuntime.get(this);
+        playbackEngine = new PlaybackEngine(SAMPLE_RATE, runtime.getPcmCache());
+        engine = runtime.getEngine();
+        scheduler = runtime.getScheduler();
+        metrics = runtime.getMetrics();
+        modelPool = runtime.getModelPool();
+        modelStager = runtime.getModelStager();
+        modelManager = runtime.getModelManager();
+        resultCache = runtime.getResultCache();
+        if (savedInstanceState == null) {
+            CompletableFuture.runAsync(() -> modelStager.removeLegacyCopies(getCacheDir()));
+        }
+        historyStore = runtime.getHistoryStore();
+        historyIndex = runtime.getHistoryIndex();
+        waveformCache = runtime.getWaveformCache();
+        ioExecutor = runtime.getIoExecutor();
+        historyExecutor = runtime.getHistoryExecutor();
+        historyRecorder = runtime.getHistoryRecorder();
+        modelListener = new ModelManager.Listener() {
+            @Override
+            public void onStatus(String text, int percent) {
+                showStatus(text, percent);
+            }
+
+            @Override
+            public void onStatusCleared() {
+                hideStatus();
+            }
+
+            @Override
+            public void onLoaded(Lang lang) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Model loaded successfully", Toast.LENGTH_SHORT).show());
+            }
+
+            @Override
+            public void onError(String message) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show());
+            }
+        };
+        // Called on the runtime's threads, which may outlive this activity
+        historyListener = new HistoryRecorder.Listener() {
+            @Override
+            public void onHistoryChanged() {
+                showHistory();
+            }
+
+            @Override
+            public void onError(String message) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show());
+            }
+        };
+        runtime.setListener(modelListener);
+        historyRecorder.setListener(historyListener);
 
 
         Button cantonese = findViewById(R.id.cantonese);
         Button mandarin = findViewById(R.id.mandarin);
         Button english = findViewById(R.id.english);
 
+        loadProgress = findViewById(R.id.loadProgress);
+        status = findViewById(R.id.status);
+
+        Button batch = findViewById(R.id.batch);
+        Button tuneWorkers = findViewById(R.id.tuneWorkers);
+
         Button selectModel = findViewById(R.id.selectModel);
         TextView selectedModel = findViewById(R.id.selectedModel);
 
@@ -108,6 +220,8 @@ public class MainActivity extends AppCompatActivity {
                 cantonese.setEnabled(true);
                 mandarin.setEnabled(true);
                 english.setEnabled(true);
+                batch.setEnabled(true);
+                tuneWorkers.setEnabled(true);
             } else {
                 selectedModelFolder = null;
             }
@@ -152,6 +266,39 @@ public class MainActivity extends AppCompatActivity {
             }
         };
 
+        CheckBox streaming = findViewById(R.id.streaming);
+        streaming.setChecked(pref.getBoolean("streaming", false));
+        streaming.setOnCheckedChangeListener((buttonView, isChecked) -> pref.edit().putBoolean("streaming", isChecked).apply());
+
+        CheckBox flac = findViewById(R.id.flac);
+        flac.setChecked(pref.getBoolean("flacHistory", false));
+        flac.setOnCheckedChangeListener((buttonView, isChecked) -> pref.edit().putBoolean("flacHistory", isChecked).apply());
+        Button settings = findViewById(R.id.settings);
+        settings.setOnClickListener(v -> editSettings());
+
+        CheckBox mixedLanguage = findViewById(R.id.mixedLanguage);
+        mixedLanguage.setChecked(pref.getBoolean("mixedLanguage", false));
+        mixedLanguage.setOnCheckedChangeListener((buttonView, isChecked) -> pref.edit().putBoolean("mixedLanguage", isChecked).apply());
+        Button languageRules = findViewById(R.id.languageRules);
+        languageRules.setOnClickListener(v -> editLanguageRules());
+
+        CheckBox preload = findViewById(R.id.preload);
+        preload.setChecked(pref.getBoolean("preload", false));
+        preload.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            pref.edit().putBoolean("preload", isChecked).apply();
+            if (!isChecked) Arrays.asList(Lang.values()).forEach(lang -> scheduler.cancel("preload:" + lang.name()));
+        });
+
+        refYue.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus) preload(Lang.YUE, refYue.getText().toString());
+        });
+        refZh.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus) preload(Lang.ZH, refZh.getText().toString());
+        });
+        refEn.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus) preload(Lang.EN, refEn.getText().toString());
+        });
+
         refYue.addTextChangedListener(textWatcher);
         refZh.addTextChangedListener(textWatcher);
         refEn.addTextChangedListener(textWatcher);
@@ -171,102 +318,111 @@ public class MainActivity extends AppCompatActivity {
                             Toast.makeText(this, "Folder selected", Toast.LENGTH_SHORT).show();
                             selectedModel.setText(selectedModelFolder);
 
-                            Arrays.asList(Lang.YUE, Lang.ZH, Lang.EN).forEach(lang -> {
-                                Long handle = modelHandles.remove(lang);
-                                if (handle != null) freeModel(handle);
-                            });
+                            modelPool.clear();
                             cantonese.setEnabled(true);
                             mandarin.setEnabled(true);
                             english.setEnabled(true);
+                            batch.setEnabled(true);
+                            tuneWorkers.setEnabled(true);
 
                         }
                     }
                 }
         );
 
-        cantonese.setOnClickListener(v -> {
-            cantonese.setEnabled(false);
-            mandarin.setEnabled(false);
-            english.setEnabled(false);
-
-            Arrays.asList(Lang.ZH, Lang.EN).forEach(lang -> {
-                Long handle = modelHandles.remove(lang);
-                if (handle != null) freeModel(handle);
-            });
+        Supplier<Map<Lang, String>> refTexts = () -> {
+            Map<Lang, String> texts = new EnumMap<>(Lang.class);
+            texts.put(Lang.YUE, refYue.getText().toString());
+            texts.put(Lang.ZH, refZh.getText().toString());
+            texts.put(Lang.EN, refEn.getText().toString());
+            return texts;
+        };
+        cantonese.setOnClickListener(v -> synthesize(Lang.YUE, refTexts.get(), infer.getText().toString()));
+        mandarin.setOnClickListener(v -> synthesize(Lang.ZH, refTexts.get(), infer.getText().toString()));
+        english.setOnClickListener(v -> synthesize(Lang.EN, refTexts.get(), infer.getText().toString()));
 
-            CompletableFuture<Boolean> loadFuture = modelHandles.containsKey(Lang.YUE)
-                    ? CompletableFuture.completedFuture(true)
-                    : loadModelAsync(refYue.getText().toString(), Lang.YUE);
 
-            loadFuture.thenCompose(success -> success
-                            ? runInferenceAsync(infer.getText().toString(), Lang.YUE)
-                            : CompletableFuture.completedFuture(false))
-                    .whenComplete((result, err) -> {
-                        runOnUiThread(() -> {
-                            cantonese.setEnabled(true);
-                            mandarin.setEnabled(true);
-                            english.setEnabled(true);
-                        });
-                    });
+        scriptPicker = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> {
+                    if (uri != null) startBatch(uri, refTexts.get(), batch);
+                }
+        );
+        batch.setOnClickListener(v -> {
+            if (batchFuture != null && !batchFuture.isDone()) {
+                batchStopped = true;
+                scheduler.cancel("batch");
+                closeBatchPool();
+            } else {
+                scriptPicker.launch(new String[]{"text/*"});
+            }
         });
-        mandarin.setOnClickListener(v -> {
-            cantonese.setEnabled(false);
-            mandarin.setEnabled(false);
-            english.setEnabled(false);
-
-            Arrays.asList(Lang.YUE, Lang.EN).forEach(lang -> {
-                Long handle = modelHandles.remove(lang);
-                if (handle != null) freeModel(handle);
-            });
+        tuneWorkers.setOnClickListener(v -> tuneBatchWorkers(refTexts.get(), infer.getText().toString(), tuneWorkers));
 
-            CompletableFuture<Boolean> loadFuture = modelHandles.containsKey(Lang.ZH)
-                    ? CompletableFuture.completedFuture(true)
-                    : loadModelAsync(refZh.getText().toString(), Lang.ZH);
 
-            loadFuture.thenCompose(success -> success
-                            ? runInferenceAsync(infer.getText().toString(), Lang.ZH)
-                            : CompletableFuture.completedFuture(false))
-                    .whenComplete((result, err) -> {
-                        runOnUiThread(() -> {
-                            cantonese.setEnabled(true);
-                            mandarin.setEnabled(true);
-                            english.setEnabled(true);
-                        });
-                    });
+        statsPanel = findViewById(R.id.statsPanel);
+        Button stats = findViewById(R.id.stats);
+        stats.setOnClickListener(v -> {
+            boolean show = statsPanel.getVisibility() != View.VISIBLE;
+            statsPanel.setText(getStatsText());
+            statsPanel.setVisibility(show ? View.VISIBLE : View.GONE);
         });
-        english.setOnClickListener(v -> {
-            cantonese.setEnabled(false);
-            mandarin.setEnabled(false);
-            english.setEnabled(false);
-
-            Arrays.asList(Lang.YUE, Lang.ZH).forEach(lang -> {
-                Long handle = modelHandles.remove(lang);
-                if (handle != null) freeModel(handle);
-            });
+        Button exportStats = findViewById(R.id.exportStats);
+        exportStats.setOnClickListener(v -> exportMetrics());
+        Button playAll = findViewById(R.id.playAll);
+        playAll.setOnClickListener(v -> playAllHistory());
+        Button mergeSelected = findViewById(R.id.mergeSelected);
+        mergeSelected.setOnClickListener(v -> mergeSelected());
 
-            CompletableFuture<Boolean> loadFuture = modelHandles.containsKey(Lang.EN)
-                    ? CompletableFuture.completedFuture(true)
-                    : loadModelAsync(refEn.getText().toString(), Lang.EN);
 
-            loadFuture.thenCompose(success -> success
-                            ? runInferenceAsync(infer.getText().toString(), Lang.EN)
-                            : CompletableFuture.completedFuture(false))
-                    .whenComplete((result, err) -> {
-                        runOnUiThread(() -> {
-                            cantonese.setEnabled(true);
-                            mandarin.setEnabled(true);
-                            english.setEnabled(true);
-                        });
-                    });
-        });
+        RecyclerView audioList = findViewById(R.id.audioList);
+        LinearLayoutManager audioLayout = new LinearLayoutManager(this);
+        audioList.setLayoutManager(audioLayout);
+        audioAdapter = new AudioAdapter(this, playbackEngine, waveformCache, waveformExecutor, new AudioAdapter.Listener() {
+            @Override
+            public void onDelete(AudioItem item) {
+                historyExecutor.execute(() -> {
+                    try {
+                        historyIndex.remove(item.id);
+                    } catch (IOException e) {
+                        Log.e("MainActivity", "onDelete: " + e.getMessage(), e);
+                    }
+                    new File(item.filePath).delete();
+                    waveformCache.remove(item.id);
+                });
+            }
 
+            @Override
+            public void onMove(AudioItem moved, AudioItem displaced) {
+                historyExecutor.execute(() -> {
+                    try {
+                        historyIndex.swap(moved.id, displaced.id);
+                    } catch (IOException e) {
+                        Log.e("MainActivity", "onMove: " + e.getMessage(), e);
+                    }
+                });
+                // Overrides any page read before the swap was saved
+                refreshHistory();
+            }
 
-        RecyclerView audioList = findViewById(R.id.audioList);
-        audioList.setLayoutManager(new LinearLayoutManager(this));
-        File audioDir = getCacheDir();
-        audioItems = loadAudioItemsFromDirectory(audioDir);
-        audioAdapter = new AudioAdapter(this, audioItems);
+            @Override
+            public void onSelectionChanged(int count) {
+                mergeSelected.setEnabled(count >= 2);
+                mergeSelected.setText(count >= 2 ? "Merge (" + count + ")" : "Merge");
+            }
+        });
         audioList.setAdapter(audioAdapter);
+        audioList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int shown = audioAdapter.getItemCount();
+                if (shown >= historyLimit && audioLayout.findLastVisibleItemPosition() >= shown - HISTORY_PAGE_SIZE / 5) {
+                    historyLimit = shown + HISTORY_PAGE_SIZE;
+                    refreshHistory();
+                }
+            }
+        });
+        historyExecutor.execute(this::loadHistory);
 
         ItemTouchHelper.SimpleCallback callback = new ItemTouchHelper.SimpleCallback(ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0) {
             @Override
@@ -282,298 +438,797 @@ public class MainActivity extends AppCompatActivity {
             }
         };
         new ItemTouchHelper(callback).attachToRecyclerView(audioList);
+
+        String lastLang = pref.getString("lastLang", null);
+        if (lastLang != null && selectedModelFolder != null) {
+            Lang lang = Lang.valueOf(lastLang);
+            EditText ref = lang == Lang.YUE ? refYue : lang == Lang.ZH ? refZh : refEn;
+            preload(lang, ref.getText().toString());
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        for (long modelHandle : modelHandles.values()) {
-            if (modelHandle != 0) {
-                freeModel(modelHandle);
+        runtime.clearListener(modelListener);
+        historyRecorder.clearListener(historyListener);
+        // Loaded models stay in the runtime. Across a configuration change, requests keep running,
+        // so a model that is half loaded still ends up in the pool for the new activity, and a
+        // finished result is still saved to the history. Batch output goes through this
+        // activity's worker pool, so it always stops
+        batchStopped = true;
+        scheduler.cancel("batch");
+        closeBatchPool();
+        if (!isChangingConfigurations()) {
+            for (Lang lang : Lang.values()) {
+                scheduler.cancel("interactive:" + lang.name());
+                scheduler.cancel("preload:" + lang.name());
             }
         }
-        executorService.shutdown();
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-        }
+        // Waveforms still queued are for rows that are gone
+        waveformExecutor.shutdownNow();
+        playbackEngine.release();
     }
 
-    private Map<String, String> getModelsFromFolder(String folderUriString, Lang lang) {
-        Map<String, String> modelMap = new HashMap<>();
-        modelMap.put("g2pW", "g2pW.onnx");
-        modelMap.put("g2p_en", "g2p_en"); // folder
-        modelMap.put("vits", "custom_vits.onnx");
-        modelMap.put("ssl", "ssl.onnx");
-        modelMap.put("t2s_encoder", "custom_t2s_encoder.onnx");
-        modelMap.put("t2s_fs_decoder", "custom_t2s_fs_decoder.onnx");
-        modelMap.put("t2s_s_decoder", "custom_t2s_s_decoder.onnx");
-        modelMap.put("bert", "bert.onnx");
-        modelMap.put("ref", "ref.wav");
-
-        Map<String, String> outputMap = new HashMap<>();
+    /**
+     * Queues loading (if needed) and synthesis of {@code text} on the lane of {@code lang}. Pressing
+     * the same language again with different text supersedes the earlier request, identical
+     * presses are merged, and other languages queue up behind it.
+     */
+    private void synthesize(Lang lang, Map<Lang, String> refTexts, String input) {
+        pref.edit().putString("lastLang", lang.name()).apply();
+        for (Lang other : Lang.values()) {
+            if (other != lang) scheduler.cancel("preload:" + other.name());
+        }
+        long request = interactiveRequests.get(lang).incrementAndGet();
 
-        try {
-            Uri folderUri = Uri.parse(folderUriString);
-            DocumentFile modelFolder = DocumentFile.fromTreeUri(this, folderUri);
-            if (modelFolder == null || !modelFolder.isDirectory()) {
-                Log.e("MainActivity", "Invalid model folder URI");
-                return null;
-            }
-            DocumentFile rootFolder = modelFolder.findFile(lang.name().toLowerCase());
-            if (rootFolder == null || !rootFolder.isDirectory()) {
-                Log.e("MainActivity", "Language subfolder not found: " + lang.name().toLowerCase());
-                return null;
+        List<TextFrontEnd.Run> runs = pref.getBoolean("mixedLanguage", false) ? textFrontEnd.analyze(input, lang) : null;
+        if (runs != null && (runs.size() > 1 || (runs.size() == 1 && runs.get(0).lang != lang))) {
+            synthesizeMixed(lang, refTexts, input, runs, request);
+            return;
+        }
+        // Single-language text still gets its numbers spelled out
+        String text = runs != null && runs.size() == 1 ? runs.get(0).text : input;
+
+        String refText = refTexts.get(lang);
+        int ahead = scheduler.getLoad();
+        Metrics.Trace trace = newTrace("interactive", lang, text);
+        CompletableFuture<Boolean> future = scheduler.submit(lang, InferenceScheduler.Priority.INTERACTIVE,
+                lang.name() + "\n" + refText + "\n" + text, "interactive:" + lang.name(),
+                ticket -> {
+                    try {
+                        // A replayed result needs no model, so it is looked up before one is leased
+                        String cacheKey = getResultKey(text, lang, refText);
+                        if (cacheKey != null && playCachedResult(cacheKey, text, lang, trace)) return true;
+                        try (ModelHandle.Lease lease = prepareModel(refText, lang, ticket, trace)) {
+                            return lease != null && runInference(text, lang, refText, cacheKey, lease, ticket, trace);
+                        }
+                    } finally {
+                        recordTrace(trace);
+                    }
+                });
+        if (ahead > 0 && !future.isDone()) {
+            Toast.makeText(this, "Queued " + lang.name() + " behind " + ahead + " request(s)", Toast.LENGTH_SHORT).show();
+        }
+        future.whenComplete((result, err) -> {
+            if (err != null && !(err instanceof CancellationException)) {
+                Log.e("MainActivity", "synthesize: " + err.getMessage(), err);
+            } else if (err == null) {
+                Log.i("MainActivity", "Scheduler wait " + scheduler.getLastWaitMillis() + " ms (avg "
+                        + scheduler.getAverageWaitMillis() + " ms), queue depth " + scheduler.getQueueDepth());
             }
+        });
+    }
 
-            for (Map.Entry<String, String> entry : modelMap.entrySet()) {
-                String key = entry.getKey();
-                String fileName = entry.getValue();
+    /**
+     * Synthesizes each language run of {@code runs} on the lane of its model and plays the runs
+     * joined in their original order. Languages are done one after another, starting with the one
+     * that was pressed, and all runs of a language share one model preparation. Pressing the same
+     * language again abandons the languages that have not started yet.
+     */
+    private void synthesizeMixed(Lang lang, Map<Lang, String> refTexts, String text, List<TextFrontEnd.Run> runs, long request) {
+        Metrics.Trace trace = newTrace("mixed", lang, text);
+        float[][] parts = new float[runs.size()][];
+        CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(true);
+        for (Lang runLang : TextFrontEnd.workOrder(runs, lang)) {
+            String refText = refTexts.get(runLang);
+            chain = chain.thenCompose(ok -> !ok || request != interactiveRequests.get(lang).get()
+                    ? CompletableFuture.completedFuture(false)
+                    : scheduler.submit(runLang, InferenceScheduler.Priority.INTERACTIVE,
+                            "mixed:" + runLang.name() + "\n" + refText + "\n" + text, "interactive:" + lang.name(),
+                            ticket -> inferRuns(runs, runLang, refText, parts, ticket, trace)));
+        }
+        chain.whenComplete((ok, err) -> {
+            try {
+                Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                if (cause != null && !(cause instanceof CancellationException)) {
+                    Log.e("MainActivity", "synthesizeMixed: " + cause.getMessage(), cause);
+                } else if (cause == null && ok) {
+                    float[] samples = join(parts, SAMPLE_RATE * RUN_GAP_MS / 1000);
+                    trace.outputSamples = samples.length;
+                    AudioClip clip = new AudioClip(samples, SAMPLE_RATE);
+                    if (!isDestroyed()) holdUntil(trace, playbackEngine.play(clip, () -> trace.mark(Metrics.Stage.PLAYBACK_START)));
+                    WavSpec spec = WavSpec.forBits(SAMPLE_RATE, pref.getInt("wavBits", 16), 1);
+                    holdUntil(trace, historyRecorder.save(clip, text, null, spec, null, pref.getBoolean("flacHistory", false), trace));
+                }
+            } finally {
+                recordTrace(trace);
+            }
+        });
+    }
 
-                DocumentFile fileEntry = rootFolder.findFile(fileName);
-                if (fileEntry == null) {
-                    Log.e("MainActivity", "Missing: " + fileName);
-                    return null;
+    /**
+     * Synthesizes the runs of {@code runs} that are in {@code lang} into {@code parts}. Runs on the
+     * lane of {@code lang}.
+     */
+    private boolean inferRuns(List<TextFrontEnd.Run> runs, Lang lang, String refText, float[][] parts,
+                              InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        try (ModelHandle.Lease lease = prepareModel(refText, lang, ticket, trace)) {
+            if (lease == null) return false;
+            long langId = TtsEngine.langId(lang);
+            for (int i = 0; i < runs.size(); i++) {
+                if (runs.get(i).lang != lang) continue;
+                if (ticket.isCancelled()) return false;
+
+                long begin = trace.begin();
+                parts[i] = engine.infer(lease.getPointer(), runs.get(i).text, langId);
+                trace.end(Metrics.Stage.INFERENCE, begin);
+                if (parts[i] == null) {
+                    runOnUiThread(() -> Toast.makeText(this, "Inference failed in " + lang.name(), Toast.LENGTH_SHORT).show());
+                    return false;
                 }
+            }
+            return true;
+        }
+    }
 
-                if (fileEntry.isFile()) {
-                    File cacheFile = new File(getCacheDir(), fileName);
-                    try (InputStream in = getContentResolver().openInputStream(fileEntry.getUri());
-                         FileOutputStream out = new FileOutputStream(cacheFile)) {
+    private static float[] join(float[][] parts, int gap) {
+        int total = 0;
+        for (float[] part : parts) total += part.length;
+        float[] samples = new float[total + gap * Math.max(parts.length - 1, 0)];
+        int offset = 0;
+        for (float[] part : parts) {
+            System.arraycopy(part, 0, samples, offset, part.length);
+            offset += part.length + gap;
+        }
+        return samples;
+    }
 
-                        byte[] buffer = new byte[4096];
-                        int len;
-                        while ((len = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, len);
-                        }
-                    }
-                    outputMap.put(key, cacheFile.getAbsolutePath());
-
-                } else if (fileEntry.isDirectory()) {
-                    File cacheDir = new File(getCacheDir(), fileName);
-                    if (!cacheDir.exists()) {
-                        if (!cacheDir.mkdirs()) {
-                            Log.e("MainActivity", "Failed to create cache folder: " + cacheDir.getAbsolutePath());
-                            return null;
-                        }
+    /**
+     * Edits the rules that force text matching a pattern into a language, e.g. {@code MTR = yue}.
+     */
+    private void editLanguageRules() {
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        input.setHint("MTR = yue\n(?i)central = yue");
+        input.setText(pref.getString("frontEndRules", ""));
+        new AlertDialog.Builder(this)
+                .setTitle("Language rules")
+                .setMessage("One rule per line: a regular expression, \"=\", then yue, zh or en")
+                .setView(input)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    String rules = input.getText().toString();
+                    try {
+                        textFrontEnd.setRules(rules);
+                        pref.edit().putString("frontEndRules", rules).apply();
+                    } catch (IllegalArgumentException e) {
+                        Toast.makeText(this, "Rules not saved: " + e.getMessage(), Toast.LENGTH_LONG).show();
                     }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-                    for (DocumentFile subFile : fileEntry.listFiles()) {
-                        if (!subFile.isFile()) continue;
+    /**
+     * Edits the settings that have no control of their own on the main screen.
+     */
+    private void editSettings() {
+        LinearLayout form = new LinearLayout(this);
+        form.setOrientation(LinearLayout.VERTICAL);
+        int padding = Math.round(20 * getResources().getDisplayMetrics().density);
+        form.setPadding(padding, padding / 2, padding, 0);
+        EditText poolBudget = addNumberField(form, "Model memory in MB, 0 for a quarter of RAM (" + (modelPool.getUsedBytes() >> 20)
+                + " of " + (modelPool.getBudget() >> 20) + " MB used)", pref.getLong("poolBudgetMb", 0));
+        EditText resultCacheSize = addNumberField(form, "Replayable results in MB (" + (resultCache.getUsedBytes() >> 20) + " MB used)",
+                pref.getLong("resultCacheMb", 200));
+        TextView formatLabel = new TextView(this);
+        formatLabel.setText("Result format");
+        form.addView(formatLabel);
+        RadioGroup wavBits = new RadioGroup(this);
+        int[] bitChoices = {16, 24, 32};
+        String[] bitLabels = {"16-bit", "24-bit", "32-bit float"};
+        for (int i = 0; i < bitChoices.length; i++) {
+            RadioButton button = new RadioButton(this);
+            button.setId(bitChoices[i]);
+            button.setText(bitLabels[i]);
+            wavBits.addView(button);
+        }
+        wavBits.check(pref.getInt("wavBits", 16));
+        form.addView(wavBits);
+        CheckBox verifyModelHash = new CheckBox(this);
+        verifyModelHash.setText("Compare model file contents when staging");
+        verifyModelHash.setChecked(pref.getBoolean("verifyModelHash", false));
+        form.addView(verifyModelHash);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Settings")
+                .setView(form)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    try {
+                        long budgetMb = Long.parseLong(poolBudget.getText().toString());
+                        long resultCacheMb = Long.parseLong(resultCacheSize.getText().toString());
+                        runtime.setPoolBudgetMb(budgetMb);
+                        runtime.setResultCacheMb(resultCacheMb);
+                        pref.edit().putInt("wavBits", wavBits.getCheckedRadioButtonId()).apply();
+                        runtime.setVerifyModelHash(verifyModelHash.isChecked());
+                    } catch (NumberFormatException e) {
+                        Toast.makeText(this, "Settings not saved: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-                        File localFile = new File(cacheDir, subFile.getName());
-                        try (InputStream in = getContentResolver().openInputStream(subFile.getUri());
-                             FileOutputStream out = new FileOutputStream(localFile)) {
+    private EditText addNumberField(LinearLayout form, String label, long value) {
+        TextView text = new TextView(this);
+        text.setText(label);
+        form.addView(text);
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setText(String.valueOf(value));
+        form.addView(input);
+        return input;
+    }
 
-                            byte[] buffer = new byte[4096];
-                            int len;
-                            while ((len = in.read(buffer)) != -1) {
-                                out.write(buffer, 0, len);
-                            }
+    /**
+     * Synthesizes every line of the script at {@code uri} into a folder of WAVs. Importing the same
+     * script again resumes the job where it stopped.
+     */
+    private void startBatch(Uri uri, Map<Lang, String> refTexts, Button batch) {
+        Lang defaultLang = Lang.valueOf(pref.getString("lastLang", Lang.YUE.name()));
+        batch.setText("Cancel Batch");
+        batchStopped = false;
+
+        batchFuture = CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) out.write(buffer, 0, len);
+                return out.toString("UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, ioExecutor).thenCompose(script -> {
+            List<BatchJob.Line> lines = BatchJob.parse(script, defaultLang);
+            File outputDir = new File(getExternalFilesDir("batch"), BatchJob.id(script, defaultLang));
+            BatchJob job = new BatchJob(outputDir, lines, WavSpec.forBits(SAMPLE_RATE, pref.getInt("wavBits", 16), 1));
+
+            // Start with languages that are already loaded
+            List<Lang> groupOrder = new ArrayList<>();
+            for (Lang lang : Lang.values()) if (modelPool.contains(lang)) groupOrder.add(lang);
+            for (Lang lang : Lang.values()) if (!groupOrder.contains(lang)) groupOrder.add(lang);
+
+            BatchJob.Synthesizer onLane = line -> scheduler.submit(line.lang, InferenceScheduler.Priority.BATCH, null, "batch",
+                    ticket -> {
+                        // Lines left over from a cancelled batch, or from a destroyed activity, do nothing
+                        if (ticket.isCancelled() || batchStopped) throw new CancellationException();
+                        Metrics.Trace trace = newTrace("batch", line.lang, line.text);
+                        try (ModelHandle.Lease lease = prepareModel(refTexts.get(line.lang), line.lang, ticket, trace)) {
+                            if (lease == null) throw new IOException(line.lang.name() + " model not loaded");
+                            long begin = trace.begin();
+                            float[] samples = engine.infer(lease.getPointer(), line.text, TtsEngine.langId(line.lang));
+                            trace.end(Metrics.Stage.INFERENCE, begin);
+                            if (samples != null) trace.outputSamples = samples.length;
+                            if (ticket.isCancelled() || batchStopped) throw new CancellationException();
+                            return samples;
+                        } finally {
+                            recordTrace(trace);
                         }
-                    }
+                    });
 
-                    // Confirm directory is not empty
-                    if (cacheDir.listFiles() == null || cacheDir.listFiles().length == 0) {
-                        Log.e("MainActivity", "Directory empty after copy: " + fileName);
-                        return null;
-                    }
+            // With several workers, each language group is spread over that many handles of its own
+            int workers = pref.getInt("batchWorkers", 1);
+            BatchJob.Synthesizer synthesizer = workers <= 1 ? onLane : line -> {
+                WorkerPool pool = getBatchPool(line.lang, refTexts.get(line.lang), workers);
+                return pool != null ? pool.submit(line.text) : onLane.submit(line);
+            };
+
+            return job.run(synthesizer, ioExecutor, groupOrder, new BatchJob.Listener() {
+                @Override
+                public void onProgress(int done, int failed, int total) {
+                    showStatus(String.format(Locale.US, "Batch: %d/%d done, %d failed", done, total, failed),
+                            total > 0 ? (done + failed) * 100 / total : 100);
+                }
 
-                    outputMap.put(key, cacheDir.getAbsolutePath());
+                @Override
+                public void onFinished(int done, int failed, int total) {
+                    hideStatus();
+                    runOnUiThread(() -> Toast.makeText(MainActivity.this, "Batch finished: " + done + "/" + total
+                            + " in " + job.getOutputDir().getAbsolutePath(), Toast.LENGTH_LONG).show());
                 }
+            });
+        }).whenComplete((result, err) -> runOnUiThread(() -> {
+            closeBatchPool();
+            if (isDestroyed()) return;
+            batch.setText("Batch Synthesis From Script");
+            if (err != null) {
+                Log.e("MainActivity", "Batch failed: " + err.getMessage(), err);
+                hideStatus();
+                Toast.makeText(this, "Batch failed: " + err.getMessage(), Toast.LENGTH_LONG).show();
             }
+        }));
+    }
 
-        } catch (Exception e) {
-            Log.e("MainActivity", "Error accessing folder: " + e.getMessage(), e);
-            return null;
+    /**
+     * Worker pool for batch lines of {@code lang}. Language groups run one after another, so the
+     * pool of the previous group is closed first. Returns null if the model cannot be staged, and
+     * the lines then go through the lane as usual. Only called from the batch job's thread.
+     */
+    private WorkerPool getBatchPool(Lang lang, String refText, int workers) {
+        synchronized (batchPoolLock) {
+            if (batchPool != null && batchPoolLang == lang) return batchPool;
+        }
+        closeBatchPool();
+
+        Map<String, String> modelFiles = stageForWorkers(lang);
+        if (modelFiles == null) return null;
+        int fitting = fitWorkers(workers, modelFiles);
+        WorkerPool pool = new WorkerPool(engine, lang, fitting, workerLoader(modelFiles, lang, refText));
+        synchronized (batchPoolLock) {
+            batchPool = pool;
+            batchPoolLang = lang;
+        }
+        // Cancelled while staging, the lines submitted to the closed pool fail right away
+        if (batchStopped) closeBatchPool();
+        Log.i("MainActivity", "Batch " + lang.name() + " on " + fitting + " workers");
+        return pool;
+    }
+
+    private void closeBatchPool() {
+        synchronized (batchPoolLock) {
+            if (batchPool == null) return;
+            batchPool.close();
+            batchPool = null;
+            batchPoolLang = null;
         }
+    }
 
-        return outputMap;
+    /**
+     * Measures batch throughput with one to four handles of the last used language on the text in
+     * the input box, and keeps the fastest configuration for batch synthesis.
+     */
+    private void tuneBatchWorkers(Map<Lang, String> refTexts, String sample, Button tuneWorkers) {
+        Lang lang = Lang.valueOf(pref.getString("lastLang", Lang.YUE.name()));
+        int cores = Runtime.getRuntime().availableProcessors();
+        tuneWorkers.setEnabled(false);
+
+        CompletableFuture.supplyAsync(() -> {
+            Map<String, String> modelFiles = stageForWorkers(lang);
+            if (modelFiles == null) throw new IllegalStateException("Failed to load models from folder");
+            int maxWorkers = fitWorkers(Math.min(4, cores), modelFiles);
+
+            // Enough independent texts to keep every worker busy a few times over
+            List<String> segments = textSegmenter.split(TextFrontEnd.normalize(sample, lang));
+            if (segments.isEmpty()) segments = List.of(WARM_UP_TEXT.get(lang));
+            List<String> texts = new ArrayList<>();
+            while (texts.size() < maxWorkers * 3) texts.addAll(segments);
+
+            showStatus("Measuring " + lang.name() + " batch throughput with up to " + maxWorkers + " workers", -1);
+            try {
+                return WorkerPool.sweep(engine, lang, maxWorkers, workerLoader(modelFiles, lang, refTexts.get(lang)), texts);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }).whenComplete((measurements, err) -> runOnUiThread(() -> {
+            hideStatus();
+            tuneWorkers.setEnabled(true);
+            WorkerPool.Measurement best = measurements != null ? WorkerPool.best(measurements) : null;
+            if (best == null) {
+                if (err != null) Log.e("MainActivity", "tuneBatchWorkers: " + err.getMessage(), err);
+                Toast.makeText(this, "Tuning failed" + (err != null ? ": " + err.getMessage() : ""), Toast.LENGTH_LONG).show();
+                return;
+            }
+            pref.edit().putInt("batchWorkers", best.workers).apply();
+
+            StringBuilder report = new StringBuilder();
+            for (WorkerPool.Measurement measurement : measurements) report.append(measurement).append('\n');
+            report.append('\n').append("Batch synthesis will use ").append(best.workers).append(" worker(s)");
+            new AlertDialog.Builder(this)
+                    .setTitle("Batch workers")
+                    .setMessage(report.toString())
+                    .setPositiveButton("OK", null)
+                    .show();
+        }));
     }
 
+    private Map<String, String> stageForWorkers(Lang lang) {
+        String folder = selectedModelFolder;
+        return folder != null ? modelStager.stage(folder, lang, null) : null;
+    }
 
-    private CompletableFuture<Boolean> loadModelAsync(@NonNull String refText, Lang lang) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (selectedModelFolder == null) {
-                runOnUiThread(() -> Toast.makeText(this, "Please select a model folder first", Toast.LENGTH_LONG).show());
-                return false;
+    /**
+     * How many of {@code requested} extra handles fit into the memory that is available right now.
+     */
+    private int fitWorkers(int requested, Map<String, String> modelFiles) {
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        getSystemService(ActivityManager.class).getMemoryInfo(memoryInfo);
+        int fitting = WorkerPool.fit(requested, ModelPool.sizeOf(modelFiles.values()), memoryInfo.availMem - memoryInfo.threshold);
+        if (fitting < requested) Log.i("MainActivity", "Only " + fitting + " of " + requested + " workers fit into memory");
+        return fitting;
+    }
+
+    /**
+     * Loads and conditions one worker handle.
+     */
+    private WorkerPool.Loader workerLoader(Map<String, String> modelFiles, Lang lang, String refText) {
+        long langId = TtsEngine.langId(lang);
+        return () -> {
+            long pointer = engine.load(modelFiles);
+            if (pointer != 0L && !engine.processReference(pointer, modelFiles.get(ModelManager.REFERENCE_KEY), refText, langId)) {
+                engine.free(pointer);
+                return 0L;
             }
+            return pointer;
+        };
+    }
 
-            try {
-                Map<String, String> modelFiles = getModelsFromFolder(selectedModelFolder, lang);
-                if (modelFiles == null || modelFiles.isEmpty()) {
-                    runOnUiThread(() -> Toast.makeText(this, "Failed to load models from folder", Toast.LENGTH_LONG).show());
-                    return false;
-                }
+    /**
+     * Loads {@code lang} in the background at batch priority and runs a short warm-up inference, so
+     * the first press costs the same as later ones. Does nothing unless preloading is enabled, and
+     * is cancelled when the user picks another language.
+     */
+    private void preload(Lang lang, String refText) {
+        if (!pref.getBoolean("preload", false) || selectedModelFolder == null) return;
+
+        scheduler.submit(lang, InferenceScheduler.Priority.BATCH, "preload:" + lang.name() + "\n" + refText, "preload:" + lang.name(),
+                ticket -> {
+                    Metrics.Trace trace = newTrace("preload", lang, WARM_UP_TEXT.get(lang));
+                    try (ModelHandle.Lease lease = prepareModel(refText, lang, ticket, trace)) {
+                        if (lease == null || ticket.isCancelled() || lease.getHandle().isWarmedUp()) return false;
+
+                        long begin = trace.begin();
+                        float[] samples = engine.infer(lease.getPointer(), WARM_UP_TEXT.get(lang), TtsEngine.langId(lang));
+                        trace.end(Metrics.Stage.INFERENCE, begin);
+                        if (samples != null) trace.outputSamples = samples.length;
+                        lease.getHandle().setWarmedUp(true);
+                        Log.i("MainActivity", "Preloaded and warmed up " + lang.name());
+                        return true;
+                    } finally {
+                        recordTrace(trace);
+                    }
+                });
+    }
 
-                runOnUiThread(() -> Toast.makeText(this, "Initializing model", Toast.LENGTH_LONG).show());
-                long modelHandle = initModel(
-                        modelFiles.get("g2pW"),
-                        modelFiles.get("g2p_en"),
-                        modelFiles.get("vits"),
-                        modelFiles.get("ssl"),
-                        modelFiles.get("t2s_encoder"),
-                        modelFiles.get("t2s_fs_decoder"),
-                        modelFiles.get("t2s_s_decoder"),
-                        modelFiles.get("bert")
-                );
-                runOnUiThread(() -> Toast.makeText(this, "Initialized model", Toast.LENGTH_LONG).show());
-
-                if (modelHandle == 0L) {
-                    runOnUiThread(() -> Toast.makeText(this, "Model initialization failed", Toast.LENGTH_LONG).show());
-                    return false;
-                }
+    private ModelHandle.Lease prepareModel(@NonNull String refText, Lang lang, InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        if (selectedModelFolder == null && !modelPool.contains(lang)) {
+            runOnUiThread(() -> Toast.makeText(this, "Please select a model folder first", Toast.LENGTH_LONG).show());
+            return null;
+        }
+        return modelManager.prepare(refText, lang, ticket, trace);
+    }
 
-                modelHandles.put(lang, modelHandle);
+    /**
+     * Key of {@code text} in the result cache, from the fingerprints of the staged model files and
+     * reference audio, or null if the language has not been staged yet. A replaced ref.wav is
+     * staged first, so the key never names the previous reference. Runs on the lane of {@code lang}.
+     */
+    private String getResultKey(String text, Lang lang, String refText) {
+        String folder = pref.getString("selected", null);
+        if (folder == null || modelStager.stageReference(folder, lang) == null) return null;
+        String reference = modelStager.getFingerprint(lang, ModelStager.REFERENCE);
+        if (reference == null) return null;
+        return ResultCache.key(lang.name(), modelStager.getModelFingerprint(lang), reference, refText,
+                String.valueOf(pref.getInt("wavBits", 16)), text);
+    }
 
-                String refAudioPath = modelFiles.get("ref");
-                long langId = lang != Lang.ZH ? 1L : 0L;
+    /**
+     * Synthesizes {@code text} with the leased model. {@code cacheKey} is null if the language was
+     * not staged before, and is then worked out now that it is.
+     */
+    private boolean runInference(@NonNull String text, Lang lang, String refText, String cacheKey, ModelHandle.Lease lease,
+                                 InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        if (ticket.isCancelled()) return false;
 
-                boolean refSuccess = processReferenceSync(modelHandle, refAudioPath, refText, langId);
-                if (!refSuccess) {
-                    freeModel(modelHandle);
-                    modelHandles.remove(lang);
-                    runOnUiThread(() -> Toast.makeText(this, "Reference audio processing failed", Toast.LENGTH_LONG).show());
-                    return false;
+        runOnUiThread(() -> Toast.makeText(this, "Inferencing " + text + " in " + lang.name(), Toast.LENGTH_SHORT).show());
+        try {
+            WavSpec spec = WavSpec.forBits(SAMPLE_RATE, pref.getInt("wavBits", 16), 1);
+            if (cacheKey == null) {
+                cacheKey = getResultKey(text, lang, refText);
+                if (cacheKey != null && playCachedResult(cacheKey, text, lang, trace)) return true;
+            }
+            String resultKey = cacheKey;
+
+            long langId = TtsEngine.langId(lang);
+            boolean streamed = pref.getBoolean("streaming", false);
+            long begin = trace.begin();
+            float[] samples = streamed
+                    ? runStreamingInference(lease.getPointer(), text, langId, ticket, trace)
+                    : engine.infer(lease.getPointer(), text, langId);
+            trace.end(Metrics.Stage.INFERENCE, begin);
+            if (samples != null) {
+                trace.outputSamples = samples.length;
+                AudioClip clip = new AudioClip(samples, SAMPLE_RATE);
+                // After a recreate the result is only saved; it shows up in the new activity's history
+                if (!streamed && !isDestroyed()) {
+                    holdUntil(trace, playbackEngine.play(clip, () -> trace.mark(Metrics.Stage.PLAYBACK_START)));
                 }
-
-                runOnUiThread(() -> Toast.makeText(this, "Model loaded successfully", Toast.LENGTH_SHORT).show());
+                holdUntil(trace, historyRecorder.save(clip, text, lang, spec, resultKey, pref.getBoolean("flacHistory", false), trace));
                 return true;
-
-            } catch (Exception e) {
-                Log.e("MainActivity", "Error loading model", e);
-                runOnUiThread(() -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            } else if (ticket.isCancelled()) {
+                Log.i("MainActivity", "Superseded: " + text);
+                return false;
+            } else {
+                runOnUiThread(() -> Toast.makeText(this, "Inference failed", Toast.LENGTH_SHORT).show());
                 return false;
             }
-        });
+        } catch (Exception e) {
+            Log.e("MainActivity", "runInference: " + e.getMessage(), e);
+            runOnUiThread(() -> Toast.makeText(this, "Inference error: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            return false;
+        }
+    }
+
+    /**
+     * Plays a previously synthesized result for {@code cacheKey} if there is one. The existing
+     * history entry is reused; if the user deleted it, the cached copy plays right away while the
+     * entry is recreated in the background.
+     */
+    private boolean playCachedResult(String cacheKey, String text, Lang lang, Metrics.Trace trace) {
+        File cached = resultCache.get(cacheKey);
+        Log.i("MainActivity", "Result cache " + (cached != null ? "hit" : "miss")
+                + " (" + resultCache.getHits() + " hits, " + resultCache.getMisses() + " misses)");
+        if (cached == null) return false;
+
+        String historyPath = resultCache.getHistoryPath(cacheKey);
+        File audio;
+        if (historyPath != null && new File(historyPath).isFile()) {
+            audio = new File(historyPath);
+        } else {
+            audio = cached;
+            historyRecorder.restore(cacheKey, cached, text, lang);
+        }
+
+        trace.cached = true;
+        holdUntil(trace, playbackEngine.play(audio, () -> trace.mark(Metrics.Stage.PLAYBACK_START)));
+        return true;
     }
 
+    /**
+     * Synthesizes {@code text} sentence by sentence, playing each segment as soon as it is ready.
+     * Returns all segments joined together, or null if any segment failed or the request was
+     * superseded.
+     */
+    private float[] runStreamingInference(long modelHandle, String text, long langId, InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        List<String> segments = textSegmenter.split(text);
+        List<float[]> parts = new ArrayList<>(segments.size());
+        int total = 0;
+
+        // Through the shared engine, so playing a history clip cuts the stream off instead of mixing in
+        PlaybackEngine.Stream stream = playbackEngine.stream(SAMPLE_RATE, () -> trace.mark(Metrics.Stage.PLAYBACK_START));
+        holdUntil(trace, stream.getStarted());
+        try {
+            for (String segment : segments) {
+                float[] part = ticket.isCancelled() ? null : engine.infer(modelHandle, segment, langId);
+                if (part == null) {
+                    stream.cancel();
+                    return null;
+                }
+                stream.append(part);
+                parts.add(part);
+                total += part.length;
+            }
+        } catch (RuntimeException e) {
+            stream.cancel();
+            throw e;
+        }
+        stream.finish();
 
-    private CompletableFuture<Boolean> runInferenceAsync(@NonNull String text, Lang lang) {
-        if (!modelHandles.containsKey(lang)) {
-            runOnUiThread(() -> Toast.makeText(this, "Please load model first", Toast.LENGTH_SHORT).show());
-            return CompletableFuture.completedFuture(false);
+        float[] samples = new float[total];
+        int offset = 0;
+        for (float[] part : parts) {
+            System.arraycopy(part, 0, samples, offset, part.length);
+            offset += part.length;
         }
+        return samples;
+    }
 
-        return CompletableFuture.supplyAsync(() -> {
-            runOnUiThread(() -> Toast.makeText(this, "Inferencing " + text + " in " + lang.name(), Toast.LENGTH_SHORT).show());
-            try {
-                float[] samples = runInferenceSync(modelHandles.get(lang), text, lang != Lang.ZH ? 1L : 0L);
-                if (samples != null) {
-                    String baseName = text.trim().replaceAll("[^\\w.-]", "_");
-                    if (baseName.isEmpty()) baseName = "output";
+    private String getStatsText() {
+        String text = metrics.summary();
+        FlacEncoder.Stats flacStats = historyRecorder.getFlacStats();
+        if (flacStats.getFiles() > 0) text += "\n" + flacStats;
+        return text;
+    }
 
-                    File dir = getCacheDir();
-                    File wavFile = new File(dir, baseName + ".wav");
+    private Metrics.Trace newTrace(String kind, Lang lang, String text) {
+        Metrics.Trace trace = new Metrics.Trace(kind, lang.name());
+        trace.chars = text.length();
+        trace.sampleRate = SAMPLE_RATE;
+        trace.rssBefore = ModelPool.readRss();
+        return trace;
+    }
 
-                    int counter = 1;
-                    while (wavFile.exists()) {
-                        wavFile = new File(dir, baseName + "_" + counter++ + ".wav");
-                    }
+    /**
+     * Lets go of the trace held by a lane task. Stages still running elsewhere, like saving the
+     * result, record it when they finish.
+     */
+    private void recordTrace(Metrics.Trace trace) {
+        release(metrics, trace);
+        runOnUiThread(() -> {
+            if (statsPanel.getVisibility() == View.VISIBLE) statsPanel.setText(getStatsText());
+        });
+    }
 
-                    writeWavFile(wavFile, new WavSpec(32000, 16, 1), samples);
-                    File wavFile1 = wavFile;
-                    runOnUiThread(() -> playAudioFromFile(wavFile1.getAbsolutePath()));
+    /**
+     * Keeps {@code trace} open until {@code stage} completes, however it completes.
+     */
+    private void holdUntil(Metrics.Trace trace, CompletableFuture<?> stage) {
+        trace.hold();
+        Metrics metrics = this.metrics;
+        stage.whenComplete((result, err) -> release(metrics, trace));
+    }
 
-                    audioItems.add(new AudioItem(wavFile.getAbsolutePath()));
-                    runOnUiThread(() -> audioAdapter.notifyItemInserted(audioItems.size() - 1));
+    /**
+     * Records {@code trace} once the last stage holding it is done. Static, so a stage that
+     * outlives the activity does not keep it alive.
+     */
+    private static void release(Metrics metrics, Metrics.Trace trace) {
+        if (!trace.release()) return;
+        trace.rssAfter = ModelPool.readRss();
+        metrics.record(trace);
+    }
 
-                    return true;
-                } else {
-                    runOnUiThread(() -> Toast.makeText(this, "Inference failed", Toast.LENGTH_SHORT).show());
-                    return false;
-                }
-            } catch (Exception e) {
-                Log.e("MainActivity", "runInferenceAsync: " + e.getMessage(), e);
-                runOnUiThread(() -> Toast.makeText(this, "Inference error: " + e.getMessage(), Toast.LENGTH_LONG).show());
-                return false;
+    /**
+     * Writes the recorded traces to a JSON file and offers it to other apps, so runs on different
+     * devices can be compared offline.
+     */
+    private void exportMetrics() {
+        String json = metrics.toJson();
+        ioExecutor.execute(() -> {
+            File file = new File(getCacheDir(), "metrics.json");
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                Log.e("MainActivity", "exportMetrics: " + e.getMessage(), e);
+                runOnUiThread(() -> Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                return;
             }
+
+            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", file);
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_STREAM, uri);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            runOnUiThread(() -> startActivity(Intent.createChooser(intent, "Export stats")));
         });
     }
 
+    private void showStatus(String text, int percent) {
+        runOnUiThread(() -> {
+            status.setText(text);
+            status.setVisibility(View.VISIBLE);
+            loadProgress.setIndeterminate(percent < 0);
+            if (percent >= 0) loadProgress.setProgress(percent);
+            loadProgress.setVisibility(View.VISIBLE);
+        });
+    }
 
-    private List<AudioItem> loadAudioItemsFromDirectory(File directory) {
-        File[] files = directory.listFiles((dir, name) ->
-                (name.endsWith(".wav") || name.endsWith(".mp3")) && !name.equalsIgnoreCase("ref.wav"));
+    private void hideStatus() {
+        runOnUiThread(() -> {
+            status.setVisibility(View.GONE);
+            loadProgress.setVisibility(View.GONE);
+        });
+    }
 
-        List<AudioItem> items = new ArrayList<>();
-        if (files != null) {
-            for (File file : files) {
-                items.add(new AudioItem(file.getAbsolutePath()));
+    /**
+     * Reads the history index once per process, importing the clips in the history directory the
+     * first time. Clips whose process died before they were indexed are recovered by the index
+     * itself. Runs on {@link #historyExecutor} before any other history change.
+     */
+    private void loadHistory() {
+        try {
+            if (!historyIndex.isLoaded()) {
+                boolean migrate = !historyIndex.exists();
+                historyIndex.load();
+                if (migrate) historyIndex.importFiles(historyStore.adopt(getCacheDir()));
+                Set<Long> ids = new HashSet<>();
+                for (HistoryIndex.Entry entry : historyIndex.page(0, historyIndex.size())) ids.add(entry.id);
+                waveformCache.retainOnly(ids);
             }
+        } catch (IOException e) {
+            Log.e("MainActivity", "loadHistory: " + e.getMessage(), e);
         }
-        return items;
+        showHistory();
     }
 
-    private void playAudioFromFile(String audioPath) {
-        try {
-            mediaPlayer.reset();
-            mediaPlayer.setDataSource(audioPath);
-            mediaPlayer.prepare();
-            mediaPlayer.start();
-        } catch (Exception e) {
-            Toast.makeText(this, "Error playing audio: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+    private void refreshHistory() {
+        historyExecutor.execute(this::showHistory);
     }
 
-    private void writeWavFile(File file, WavSpec spec, float[] samples) {
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            short[] pcm = new short[samples.length];
-            for (int i = 0; i < samples.length; i++) {
-                pcm[i] = (short) Math.max(Math.min(samples[i] * 32767, 32767), -32768);
-            }
-            int byteRate = spec.sampleRate * spec.channels * spec.bitsPerSample / 8;
-            int totalAudioLen = pcm.length * 2;
-            int totalDataLen = totalAudioLen + 36;
-
-            out.write("RIFF".getBytes());
-            out.write(intToByteArray(totalDataLen));
-            out.write("WAVEfmt ".getBytes());
-            out.write(intToByteArray(16)); // Subchunk1Size
-            out.write(shortToByteArray((short) 1)); // PCM
-            out.write(shortToByteArray((short) spec.channels));
-            out.write(intToByteArray(spec.sampleRate));
-            out.write(intToByteArray(byteRate));
-            out.write(shortToByteArray((short) (spec.channels * spec.bitsPerSample / 8)));
-            out.write(shortToByteArray((short) spec.bitsPerSample));
-            out.write("data".getBytes());
-            out.write(intToByteArray(totalAudioLen));
-
-            ByteBuffer buffer = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
-            for (short sample : pcm) {
-                buffer.clear();
-                buffer.putShort(sample);
-                out.write(buffer.array());
-            }
-        } catch (Exception e) {
-            Log.e("MainActivity", "writeWavFile: " + e.getMessage(), e);
+    /**
+     * Shows the first {@link #historyLimit} entries of the index. Runs on {@link #historyExecutor}.
+     */
+    private void showHistory() {
+        if (!historyIndex.isLoaded()) return;
+        List<AudioItem> items = new ArrayList<>();
+        for (HistoryIndex.Entry entry : historyIndex.page(0, historyLimit)) {
+            items.add(new AudioItem(entry));
         }
+        runOnUiThread(() -> audioAdapter.submitList(items));
     }
 
-    private byte[] intToByteArray(int value) {
-        return new byte[]{
-                (byte) (value & 0xFF),
-                (byte) ((value >> 8) & 0xFF),
-                (byte) ((value >> 16) & 0xFF),
-                (byte) ((value >> 24) & 0xFF)
-        };
+    /**
+     * Plays the whole history in list order, including entries not loaded into the list yet.
+     */
+    private void playAllHistory() {
+        historyExecutor.execute(() -> {
+            List<File> files = new ArrayList<>();
+            for (HistoryIndex.Entry entry : historyIndex.page(0, historyIndex.size())) {
+                files.add(new File(entry.path));
+            }
+            playbackEngine.playAll(files);
+        });
     }
 
-    private byte[] shortToByteArray(short value) {
-        return new byte[]{
-                (byte) (value & 0xFF),
-                (byte) ((value >> 8) & 0xFF)
-        };
+    /**
+     * Joins the checked results, in list order, into one WAV and shares it. Asks for the silence
+     * between them, or the length of a crossfade.
+     */
+    private void mergeSelected() {
+        List<File> files = new ArrayList<>();
+        for (AudioItem item : audioAdapter.getSelectedItems()) files.add(new File(item.filePath));
+        if (files.size() < 2) return;
+
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setText(String.valueOf(pref.getInt("mergeJoinMs", 300)));
+        new AlertDialog.Builder(this)
+                .setTitle("Merge " + files.size() + " results")
+                .setMessage("Milliseconds of silence between results, or of overlap when crossfading")
+                .setView(input)
+                .setPositiveButton("Gap", (dialog, which) -> mergeFiles(files, parseMillis(input), 0))
+                .setNeutralButton("Crossfade", (dialog, which) -> mergeFiles(files, 0, parseMillis(input)))
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
-    private static class WavSpec {
-        int sampleRate;
-        int bitsPerSample;
-        int channels;
-
-        private WavSpec(int sampleRate, int bitsPerSample, int channels) {
-            this.sampleRate = sampleRate;
-            this.bitsPerSample = bitsPerSample;
-            this.channels = channels;
+    private int parseMillis(EditText input) {
+        int millis;
+        try {
+            millis = Math.max(0, Integer.parseInt(input.getText().toString().trim()));
+        } catch (NumberFormatException e) {
+            millis = 0;
         }
+        pref.edit().putInt("mergeJoinMs", millis).apply();
+        return millis;
+    }
+
+    private void mergeFiles(List<File> files, int gapMillis, int crossfadeMillis) {
+        ioExecutor.execute(() -> {
+            File mergedDir = new File(getCacheDir(), "merged");
+            File[] previous = mergedDir.listFiles();
+            if (previous != null) {
+                for (File file : previous) file.delete();
+            }
+            mergedDir.mkdirs();
+            File output = new File(mergedDir, "merged_" + System.currentTimeMillis() + ".wav");
+            try {
+                long begin = System.nanoTime();
+                long frames = clipMerger.merge(files, output, gapMillis, crossfadeMillis);
+                Log.i("MainActivity", "Merged " + files.size() + " results into " + output.length() + " bytes in "
+                        + (System.nanoTime() - begin) / 1_000_000 + " ms");
+                runOnUiThread(() -> {
+                    Toast.makeText(this, String.format(Locale.US, "Merged %d results (%.1f s)", files.size(),
+                            frames / (double) SAMPLE_RATE), Toast.LENGTH_SHORT).show();
+                    audioAdapter.clearSelection();
+                    AudioAdapter.share(this, output);
+                });
+            } catch (IOException | RuntimeException e) {
+                Log.e("MainActivity", "mergeFiles: " + e.getMessage(), e);
+                runOnUiThread(() -> Toast.makeText(this, "Merge failed: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        });
     }
 }
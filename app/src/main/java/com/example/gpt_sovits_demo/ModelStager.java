@@ -0,0 +1,480 @@
+package com.example.gpt_sovits_demo;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies the model files of one language from the SAF tree into a private staging directory.
+ * Every language gets its own directory with a manifest of the source fingerprints, so a file
+ * is only copied again when its document size, last-modified time or (optionally) content hash
+ * differs from what was staged before. Files that do need copying are copied concurrently
+ * through {@link FileChannel}s by a bounded number of workers.
+ * <p>
+ * The language folders mostly carry identical copies of the shared models (g2pW, bert, ssl,
+ * g2p_en), so staged files live once in a {@link BlobStore} and the language directories hold
+ * links to them. A source file whose probe matches a stored blob, and whose full hash then
+ * confirms it, is linked instead of copied, so staging another language only reads the shared
+ * files and copies the ones that are really its own.
+ */
+public class ModelStager {
+    private static final String TAG = "ModelStager";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String SOURCE = "source";
+    private static final String BLOBS = "blobs";
+    // One lock per staging directory, so lanes of different languages stage concurrently and only
+    // meet in the blob store, which pins what each of them is using
+    private static final Map<String, Object> DIR_LOCKS = new ConcurrentHashMap<>();
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    public static final String REFERENCE = "ref.wav";
+
+    private final Context context;
+    private final File stagingRoot;
+    private volatile boolean verifyContent;
+    private final ParallelCopier copier;
+    private final BlobStore blobStore;
+
+    /**
+     * Work collected while planning one staging run.
+     */
+    private static class Plan {
+        final List<ParallelCopier.Task> tasks = new ArrayList<>();
+        final Map<ParallelCopier.Task, String[]> adoptions = new HashMap<>();
+        final Map<String, File> migrations = new LinkedHashMap<>();
+        final Set<String> pinned = new HashSet<>();
+        long linkedBytes;
+    }
+
+    public ModelStager(Context context, File stagingRoot, boolean verifyContent, int workers) {
+        this.context = context;
+        this.stagingRoot = stagingRoot;
+        this.verifyContent = verifyContent;
+        this.copier = new ParallelCopier(workers);
+        this.blobStore = new BlobStore(new File(stagingRoot, BLOBS));
+    }
+
+    /**
+     * Also compares content hashes of staged files with the source, not only size and
+     * modification time. Slower, as every source file is read, but catches a file replaced by one
+     * of the same size and time. Takes effect with the next file checked.
+     */
+    public void setVerifyContent(boolean verifyContent) {
+        this.verifyContent = verifyContent;
+    }
+
+    public static Map<String, String> modelFiles() {
+        Map<String, String> modelMap = new LinkedHashMap<>();
+        modelMap.put("g2pW", "g2pW.onnx");
+        modelMap.put("g2p_en", "g2p_en"); // folder
+        modelMap.put("vits", "custom_vits.onnx");
+        modelMap.put("ssl", "ssl.onnx");
+        modelMap.put("t2s_encoder", "custom_t2s_encoder.onnx");
+        modelMap.put("t2s_fs_decoder", "custom_t2s_fs_decoder.onnx");
+        modelMap.put("t2s_s_decoder", "custom_t2s_s_decoder.onnx");
+        modelMap.put("bert", "bert.onnx");
+        modelMap.put("ref", REFERENCE);
+        return modelMap;
+    }
+
+    public File getLanguageDir(Lang lang) {
+        return new File(stagingRoot, lang.name().toLowerCase());
+    }
+
+    /**
+     * Stages every model file of {@code lang} and returns the local paths keyed like
+     * {@link #modelFiles()}, or null if the folder is incomplete or a copy failed.
+     */
+    public Map<String, String> stage(@NonNull String folderUriString, Lang lang, ParallelCopier.ProgressListener listener) {
+        synchronized (lockFor(getLanguageDir(lang))) {
+            Map<String, String> outputMap = new HashMap<>();
+            Plan plan = new Plan();
+
+            ACTIVE.incrementAndGet();
+            try {
+                DocumentFile rootFolder = findLanguageFolder(folderUriString, lang);
+                if (rootFolder == null) return null;
+
+                File langDir = getLanguageDir(lang);
+                if (!langDir.isDirectory() && !langDir.mkdirs()) {
+                    Log.e(TAG, "Failed to create staging folder: " + langDir.getAbsolutePath());
+                    return null;
+                }
+
+                Properties previous = loadManifest(langDir);
+                if (!folderUriString.equals(previous.getProperty(SOURCE))) {
+                    previous.clear();
+                }
+                Properties current = new Properties();
+                current.setProperty(SOURCE, folderUriString);
+
+                Map<String, DocumentFile> children = listByName(rootFolder);
+
+                for (Map.Entry<String, String> entry : modelFiles().entrySet()) {
+                    String key = entry.getKey();
+                    String fileName = entry.getValue();
+
+                    DocumentFile fileEntry = children.get(fileName);
+                    if (fileEntry == null) {
+                        Log.e(TAG, "Missing: " + fileName);
+                        return null;
+                    }
+
+                    if (fileEntry.isFile()) {
+                        File stagedFile = new File(langDir, fileName);
+                        planFile(fileEntry, stagedFile, fileName, previous, current, plan);
+                        outputMap.put(key, stagedFile.getAbsolutePath());
+
+                    } else if (fileEntry.isDirectory()) {
+                        File stagedDir = new File(langDir, fileName);
+                        if (!stagedDir.isDirectory() && !stagedDir.mkdirs()) {
+                            Log.e(TAG, "Failed to create staging folder: " + stagedDir.getAbsolutePath());
+                            return null;
+                        }
+
+                        Set<String> names = new HashSet<>();
+                        for (DocumentFile subFile : fileEntry.listFiles()) {
+                            if (!subFile.isFile() || subFile.getName() == null) continue;
+
+                            names.add(subFile.getName());
+                            File stagedFile = new File(stagedDir, subFile.getName());
+                            planFile(subFile, stagedFile, fileName + "/" + subFile.getName(), previous, current, plan);
+                        }
+
+                        // Drop files that no longer exist in the source folder
+                        File[] staged = stagedDir.listFiles();
+                        if (staged != null) {
+                            for (File file : staged) {
+                                if (!names.contains(file.getName())) file.delete();
+                            }
+                        }
+
+                        if (names.isEmpty()) {
+                            Log.e(TAG, "Directory empty: " + fileName);
+                            return null;
+                        }
+
+                        outputMap.put(key, stagedDir.getAbsolutePath());
+                    }
+                }
+
+                copier.copyAll(plan.tasks, listener);
+                finish(langDir, current, plan);
+                Log.i(TAG, String.format(Locale.US, "Staged %s, %d file(s) copied, %.1f MB linked from shared blobs",
+                        lang.name(), plan.tasks.size(), plan.linkedBytes / 1048576.0));
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error accessing folder: " + e.getMessage(), e);
+                return null;
+            } finally {
+                blobStore.unpin(plan.pinned);
+                ACTIVE.decrementAndGet();
+            }
+
+            return outputMap;
+        }
+    }
+
+    /**
+     * Re-stages only the reference audio of {@code lang} and returns its local path, or null if it
+     * is missing. Picks up a replaced ref.wav without looking at the model files. Called before
+     * every synthesis, so an unchanged reference is confirmed without waiting for the staging lock.
+     */
+    public String stageReference(@NonNull String folderUriString, Lang lang) {
+        DocumentFile reference;
+        File langDir = getLanguageDir(lang);
+        File stagedFile = new File(langDir, REFERENCE);
+        try {
+            DocumentFile rootFolder = findLanguageFolder(folderUriString, lang);
+            if (rootFolder == null) return null;
+
+            reference = rootFolder.findFile(REFERENCE);
+            if (reference == null || !reference.isFile()) {
+                Log.e(TAG, "Missing: " + REFERENCE);
+                return null;
+            }
+
+            Properties manifest = loadManifest(langDir);
+            String hash = verifyContent ? hash(reference) : null;
+            if (isUnchanged(reference, stagedFile, REFERENCE, manifest, hash)) return stagedFile.getAbsolutePath();
+        } catch (Exception e) {
+            Log.e(TAG, "Error staging reference: " + e.getMessage(), e);
+            return null;
+        }
+
+        synchronized (lockFor(langDir)) {
+            try {
+                Properties manifest = loadManifest(langDir);
+                Plan plan = new Plan();
+                ACTIVE.incrementAndGet();
+                try {
+                    planFile(reference, stagedFile, REFERENCE, manifest, manifest, plan);
+                    copier.copyAll(plan.tasks, null);
+                    finish(langDir, manifest, plan);
+                } finally {
+                    blobStore.unpin(plan.pinned);
+                    ACTIVE.decrementAndGet();
+                }
+                return stagedFile.getAbsolutePath();
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error staging reference: " + e.getMessage(), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Fingerprint of a staged file as recorded in the manifest of {@code lang}, or null if it has
+     * not been staged.
+     */
+    public String getFingerprint(Lang lang, String name) {
+        Properties manifest = loadManifest(getLanguageDir(lang));
+        String size = manifest.getProperty(name + ".size");
+        if (size == null) return null;
+        return size + ":" + manifest.getProperty(name + ".modified") + ":" + manifest.getProperty(name + ".hash", "");
+    }
+
+    /**
+     * Deletes the flat model copies older versions left directly in the cache directory.
+     */
+    public void removeLegacyCopies(File cacheDir) {
+        for (String fileName : modelFiles().values()) {
+            File legacy = new File(cacheDir, fileName);
+            if (legacy.isDirectory()) {
+                File[] files = legacy.listFiles();
+                if (files != null) {
+                    for (File file : files) file.delete();
+                }
+            }
+            if (legacy.exists() && !legacy.delete()) {
+                Log.w(TAG, "Failed to remove legacy copy: " + legacy.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Hash over the recorded fingerprints of every staged model file of {@code lang}, excluding the
+     * reference audio. Changes whenever any model file is replaced.
+     */
+    public String getModelFingerprint(Lang lang) {
+        Properties manifest = loadManifest(getLanguageDir(lang));
+        List<String> names = new ArrayList<>(manifest.stringPropertyNames());
+        Collections.sort(names);
+
+        StringBuilder builder = new StringBuilder();
+        for (String name : names) {
+            if (name.equals(SOURCE) || name.startsWith(REFERENCE + ".")) continue;
+            builder.append(name).append('=').append(manifest.getProperty(name)).append('\n');
+        }
+        return Hashes.key(builder.toString());
+    }
+
+    private DocumentFile findLanguageFolder(String folderUriString, Lang lang) {
+        DocumentFile modelFolder = DocumentFile.fromTreeUri(context, Uri.parse(folderUriString));
+        if (modelFolder == null || !modelFolder.isDirectory()) {
+            Log.e(TAG, "Invalid model folder URI");
+            return null;
+        }
+        DocumentFile rootFolder = modelFolder.findFile(lang.name().toLowerCase());
+        if (rootFolder == null || !rootFolder.isDirectory()) {
+            Log.e(TAG, "Language subfolder not found: " + lang.name().toLowerCase());
+            return null;
+        }
+        return rootFolder;
+    }
+
+    private void planFile(DocumentFile source, File target, String name, Properties previous, Properties current, Plan plan) throws IOException {
+        long length = source.length();
+        String size = String.valueOf(length);
+        String modified = String.valueOf(source.lastModified());
+        String hash = verifyContent ? hash(source) : previous.getProperty(name + ".hash");
+        String blob = previous.getProperty(name + ".blob");
+        boolean unchanged = isUnchanged(source, target, name, previous, hash);
+
+        current.setProperty(name + ".size", size);
+        current.setProperty(name + ".modified", modified);
+        current.remove(name + ".hash");
+        current.remove(name + ".blob");
+
+        if (unchanged) {
+            if (hash != null) current.setProperty(name + ".hash", hash);
+            if (blob != null) {
+                current.setProperty(name + ".blob", blob);
+            } else {
+                // Staged before the blob store existed, move it in after copying
+                plan.migrations.put(name, target);
+            }
+            return;
+        }
+
+        String probe = null;
+        if (length > 0) {
+            try (FileChannel channel = open(source)) {
+                probe = BlobStore.probe(channel, length);
+            } catch (IOException e) {
+                // Streams that cannot seek are simply copied
+                Log.w(TAG, "Cannot probe " + name + ": " + e.getMessage());
+            }
+        } else {
+            Log.w(TAG, "Size of " + name + " unknown, copying until the end of the stream");
+        }
+        String sha = probe != null ? blobStore.find(length, probe) : null;
+        if (sha != null) {
+            plan.pinned.add(sha);
+            // The probe only samples the file, and fine-tunes of one base model can share those
+            // samples, so only the full hash decides. Reading is still much cheaper than copying.
+            if (sha.equals(verifyContent ? hash : hash(source))) {
+                blobStore.link(sha, target);
+                plan.linkedBytes += length;
+                recordBlob(current, name, sha);
+                return;
+            }
+            Log.i(TAG, "Probe of " + name + " matched a different blob, copying it");
+        }
+
+        // Copied with transferTo and hashed chunk by chunk as it lands, so the copy is not read again
+        ParallelCopier.Task task = new ParallelCopier.Task(() -> open(source), target, length, true);
+        plan.tasks.add(task);
+        plan.adoptions.put(task, new String[]{name, probe});
+    }
+
+    /**
+     * Whether {@code target} still holds what {@code manifest} recorded for {@code source}. With
+     * content verification, {@code hash} is the freshly computed hash of the source.
+     */
+    private boolean isUnchanged(DocumentFile source, File target, String name, Properties manifest, String hash) {
+        // Providers report 0 when they do not know the size, then only a non-empty copy counts
+        long length = source.length();
+        return target.isFile()
+                && (length > 0 ? target.length() == length : target.length() > 0)
+                && String.valueOf(length).equals(manifest.getProperty(name + ".size"))
+                && String.valueOf(source.lastModified()).equals(manifest.getProperty(name + ".modified"))
+                && (!verifyContent || (hash != null && hash.equals(manifest.getProperty(name + ".hash"))));
+    }
+
+    private static Object lockFor(File dir) {
+        return DIR_LOCKS.computeIfAbsent(dir.getAbsolutePath(), path -> new Object());
+    }
+
+    /**
+     * Moves what was copied into the blob store, saves the manifest and deletes blobs that no
+     * language references any more. Collection is left to a later run while another language is
+     * staging, because its pins may already have been released by a third one.
+     */
+    private void finish(File langDir, Properties current, Plan plan) throws IOException {
+        for (Map.Entry<ParallelCopier.Task, String[]> entry : plan.adoptions.entrySet()) {
+            File copied = entry.getKey().getTarget();
+            if (copied.length() == 0) throw new IOException(entry.getValue()[0] + " is empty");
+            String sha = entry.getKey().getHash();
+            plan.pinned.add(sha);
+            blobStore.adopt(entry.getKey().getTarget(), sha, entry.getValue()[1]);
+            recordBlob(current, entry.getValue()[0], sha);
+        }
+        for (Map.Entry<String, File> entry : plan.migrations.entrySet()) {
+            File file = entry.getValue();
+            String sha = BlobStore.hash(file);
+            String probe;
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                probe = BlobStore.probe(channel, file.length());
+            }
+            plan.pinned.add(sha);
+            blobStore.adopt(file, sha, probe);
+            recordBlob(current, entry.getKey(), sha);
+        }
+        saveManifest(langDir, current);
+        if (ACTIVE.get() > 1) return;
+
+        Set<String> referenced = new HashSet<>();
+        for (Lang lang : Lang.values()) {
+            Properties manifest = loadManifest(getLanguageDir(lang));
+            for (String name : manifest.stringPropertyNames()) {
+                if (name.endsWith(".blob")) referenced.add(manifest.getProperty(name));
+            }
+        }
+        long freed = blobStore.retainOnly(referenced);
+        if (freed > 0) Log.i(TAG, "Removed " + freed + " bytes of unreferenced blobs");
+    }
+
+    private static void recordBlob(Properties manifest, String name, String sha) {
+        manifest.setProperty(name + ".hash", sha);
+        manifest.setProperty(name + ".blob", sha);
+    }
+
+    private FileChannel open(DocumentFile source) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(source.getUri(), "r");
+        if (pfd == null) throw new IOException("Cannot open " + source.getUri());
+        // Closing the channel closes the stream and with it the descriptor
+        return new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+    }
+
+    private String hash(DocumentFile source) throws IOException {
+        try (InputStream in = context.getContentResolver().openInputStream(source.getUri())) {
+            if (in == null) throw new IOException("Cannot open " + source.getUri());
+
+            MessageDigest digest = Hashes.sha256();
+            byte[] buffer = new byte[65536];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+            return Hashes.toHex(digest.digest());
+        }
+    }
+
+    private static Map<String, DocumentFile> listByName(DocumentFile folder) {
+        Map<String, DocumentFile> children = new HashMap<>();
+        for (DocumentFile child : folder.listFiles()) {
+            if (child.getName() != null) children.put(child.getName(), child);
+        }
+        return children;
+    }
+
+    private static Properties loadManifest(File langDir) {
+        Properties manifest = new Properties();
+        File file = new File(langDir, MANIFEST);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Ignoring unreadable manifest: " + e.getMessage());
+                manifest.clear();
+            }
+        }
+        return manifest;
+    }
+
+    private static void saveManifest(File langDir, Properties manifest) throws IOException {
+        File partial = new File(langDir, MANIFEST + ".part");
+        try (OutputStream out = new FileOutputStream(partial)) {
+            manifest.store(out, null);
+        }
+        if (!partial.renameTo(new File(langDir, MANIFEST))) {
+            throw new IOException("Failed to write manifest");
+        }
+    }
+}
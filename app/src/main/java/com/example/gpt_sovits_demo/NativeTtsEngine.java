@@ -0,0 +1,38 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.Map;
+
+/**
+ * The GPT-SoVITS ONNX engine from {@code libgpt_sovits_demo_jni}. The JNI entry points are bound
+ * to {@link MainActivity} by name, so they stay declared there.
+ */
+public class NativeTtsEngine implements TtsEngine {
+    @Override
+    public long load(Map<String, String> modelFiles) {
+        return MainActivity.initModel(
+                modelFiles.get("g2pW"),
+                modelFiles.get("g2p_en"),
+                modelFiles.get("vits"),
+                modelFiles.get("ssl"),
+                modelFiles.get("t2s_encoder"),
+                modelFiles.get("t2s_fs_decoder"),
+                modelFiles.get("t2s_s_decoder"),
+                modelFiles.get("bert")
+        );
+    }
+
+    @Override
+    public boolean processReference(long model, String refAudioPath, String refText, long langId) {
+        return MainActivity.processReferenceSync(model, refAudioPath, refText, langId);
+    }
+
+    @Override
+    public float[] infer(long model, String text, long langId) {
+        return MainActivity.runInferenceSync(model, text, langId);
+    }
+
+    @Override
+    public void free(long model) {
+        MainActivity.freeModel(model);
+    }
+}
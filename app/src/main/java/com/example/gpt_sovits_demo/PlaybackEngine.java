@@ -0,0 +1,347 @@
+package com.example.gpt_sovits_demo;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Plays fresh results and history clips through one low-latency {@link AudioTrack} that lives as
+ * long as the activity, so a tap only costs writing the first block. Fresh results are played
+ * straight from memory. History clips are decoded on the playback thread and the most recent ones
+ * are kept in a {@link PcmCache} shared with the runtime, which also holds results that were just
+ * saved. A queue of clips is written back to
+ * back into the same track, with the next clip decoded while the current one plays, so there is
+ * no gap between them. A {@link Stream} plays audio that is still being synthesized, segment by
+ * segment as it arrives. Starting new playback cuts off the current one.
+ */
+public class PlaybackEngine {
+    private static final String TAG = "PlaybackEngine";
+    private static final int CHUNK_FRAMES = 1024;
+    private static final long IDLE_POLL_MS = 20;
+
+    private static final class Request {
+        final List<Supplier<AudioClip>> clips;
+        // Segments of a stream, in place of clips, ended by END
+        final BlockingQueue<AudioClip> segments;
+        final Runnable onStart;
+        long generation;
+        // True once the first samples are queued, false if the request is dropped before that
+        final CompletableFuture<Boolean> started = new CompletableFuture<>();
+        boolean playing;
+
+        Request(List<Supplier<AudioClip>> clips, BlockingQueue<AudioClip> segments, Runnable onStart) {
+            this.clips = clips;
+            this.segments = segments;
+            this.onStart = onStart;
+        }
+    }
+
+    /**
+     * Audio that is still being produced, e.g. a result synthesized sentence by sentence.
+     */
+    public final class Stream {
+        private final Request request;
+        private final int sampleRate;
+
+        private Stream(Request request, int sampleRate) {
+            this.request = request;
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Plays {@code samples} right after the segments appended before.
+         */
+        public void append(float[] samples) {
+            // Dropped streams are not played, so there is no point in keeping their segments
+            if (!Boolean.FALSE.equals(request.started.getNow(null))) request.segments.add(new AudioClip(samples, sampleRate));
+        }
+
+        /**
+         * Ends the stream once the segments appended so far have been played.
+         */
+        public void finish() {
+            request.segments.add(END);
+        }
+
+        /**
+         * Stops the stream right away, unless other playback has already replaced it.
+         */
+        public void cancel() {
+            synchronized (PlaybackEngine.this) {
+                if (generation.get() == request.generation) stop();
+            }
+        }
+
+        /**
+         * Tells whether the stream started playing at all.
+         */
+        public CompletableFuture<Boolean> getStarted() {
+            return request.started;
+        }
+    }
+
+    private static final AudioClip END = new AudioClip(new float[0], 0);
+    private static final Request RELEASE = new Request(Collections.emptyList(), null, null);
+
+    private final AudioTrack audioTrack;
+    private final PcmCache cache;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong generation = new AtomicLong();
+    private boolean released;
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor();
+    private final Thread writer;
+    private int trackRate;
+    private long written;
+
+    public PlaybackEngine(int sampleRate, PcmCache cache) {
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_FLOAT);
+        audioTrack = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minBuffer, CHUNK_FRAMES * 4 * 4))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                .build();
+        trackRate = sampleRate;
+        this.cache = cache;
+        writer = new Thread(this::run, TAG);
+        writer.start();
+    }
+
+    /**
+     * Plays {@code file}, calling {@code onStart} on the playback thread once the first samples
+     * are queued. The returned future tells whether playback started at all.
+     */
+    public CompletableFuture<Boolean> play(File file, Runnable onStart) {
+        return submit(Collections.singletonList(() -> load(file)), onStart);
+    }
+
+    /**
+     * Plays samples that are already in memory, e.g. a result that is still being written to disk.
+     */
+    public CompletableFuture<Boolean> play(AudioClip clip, Runnable onStart) {
+        return submit(Collections.singletonList(() -> clip), onStart);
+    }
+
+    /**
+     * Starts playing audio that is appended to the returned stream while it is produced, calling
+     * {@code onStart} on the playback thread once the first samples are queued.
+     */
+    public Stream stream(int sampleRate, Runnable onStart) {
+        Request request = new Request(Collections.emptyList(), new LinkedBlockingQueue<>(), onStart);
+        submit(request);
+        return new Stream(request, sampleRate);
+    }
+
+    /**
+     * Plays {@code files} one after another without gaps.
+     */
+    public void playAll(List<File> files) {
+        List<Supplier<AudioClip>> clips = new ArrayList<>(files.size());
+        for (File file : files) clips.add(() -> load(file));
+        submit(clips, null);
+    }
+
+    public void stop() {
+        submit(Collections.emptyList(), null);
+    }
+
+    /**
+     * Decodes {@code file} into the cache in the background, e.g. when the play button is touched,
+     * so the tap that follows finds it ready.
+     */
+    public void prefetch(File file) {
+        decoder.execute(() -> load(file));
+    }
+
+    public void invalidate(File file) {
+        cache.invalidate(file);
+    }
+
+    public synchronized void release() {
+        released = true;
+        generation.incrementAndGet();
+        drop();
+        queue.add(RELEASE);
+    }
+
+    private CompletableFuture<Boolean> submit(List<Supplier<AudioClip>> clips, Runnable onStart) {
+        Request request = new Request(clips, null, onStart);
+        submit(request);
+        return request.started;
+    }
+
+    private synchronized void submit(Request request) {
+        request.generation = generation.incrementAndGet();
+        drop();
+        if (released) {
+            request.started.complete(false);
+        } else {
+            queue.add(request);
+        }
+    }
+
+    /**
+     * Removes the requests that have not started yet.
+     */
+    private void drop() {
+        List<Request> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        for (Request request : dropped) request.started.complete(false);
+    }
+
+    private void run() {
+        boolean idle = true;
+        try {
+            while (true) {
+                Request request = idle ? queue.take() : queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (request == RELEASE) break;
+                if (request == null) {
+                    // Everything queued has been heard, stop pulling silence through the track
+                    if (audioTrack.getPlaybackHeadPosition() >= written) {
+                        reset();
+                        idle = true;
+                    }
+                    continue;
+                }
+                if (request.generation != generation.get()) {
+                    request.started.complete(false);
+                    continue;
+                }
+
+                reset();
+                try {
+                    idle = !play(request);
+                } finally {
+                    request.started.complete(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                released = true;
+                drop();
+            }
+            audioTrack.release();
+            decoder.shutdown();
+        }
+    }
+
+    /**
+     * Writes the clips of {@code request} into the track until they are done or a newer request
+     * arrives. Returns whether anything was written.
+     */
+    private boolean play(Request request) throws InterruptedException {
+        if (request.segments != null) return playStream(request);
+
+        Future<AudioClip> next = null;
+        for (int i = 0; i < request.clips.size(); i++) {
+            AudioClip clip;
+            if (next != null) {
+                try {
+                    clip = next.get();
+                } catch (ExecutionException e) {
+                    clip = null;
+                }
+            } else {
+                clip = request.clips.get(i).get();
+            }
+            if (i + 1 < request.clips.size()) {
+                next = decoder.submit(request.clips.get(i + 1)::get);
+            } else {
+                next = null;
+            }
+            if (clip != null && !write(request, clip)) break;
+        }
+        return request.playing;
+    }
+
+    /**
+     * Writes the segments of a stream as they arrive, until it is finished or a newer request
+     * arrives. Between segments the track plays silence.
+     */
+    private boolean playStream(Request request) throws InterruptedException {
+        while (request.generation == generation.get()) {
+            AudioClip segment = request.segments.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+            if (segment == END) break;
+            if (segment != null && !write(request, segment)) break;
+        }
+        return request.playing;
+    }
+
+    /**
+     * Writes {@code clip} into the track. Returns false if a newer request arrived or the track
+     * failed.
+     */
+    private boolean write(Request request, AudioClip clip) {
+        if (clip.samples.length == 0) return true;
+        if (clip.sampleRate != trackRate) {
+            audioTrack.setPlaybackRate(clip.sampleRate);
+            trackRate = clip.sampleRate;
+        }
+        for (int offset = 0; offset < clip.samples.length; ) {
+            if (request.generation != generation.get()) return false;
+            int count = Math.min(CHUNK_FRAMES, clip.samples.length - offset);
+            int result = audioTrack.write(clip.samples, offset, count, AudioTrack.WRITE_BLOCKING);
+            if (result < 0) {
+                Log.e(TAG, "AudioTrack write failed: " + result);
+                return false;
+            }
+            offset += result;
+            written += result;
+            if (!request.playing) {
+                // Primed with one block, so the track does not underrun right away
+                audioTrack.play();
+                request.playing = true;
+                if (request.onStart != null) request.onStart.run();
+                request.started.complete(true);
+            }
+        }
+        return true;
+    }
+
+    private void reset() {
+        if (written == 0) return;
+        audioTrack.pause();
+        audioTrack.flush();
+        written = 0;
+    }
+
+    private AudioClip load(File file) {
+        AudioClip clip = cache.get(file);
+        if (clip != null) return clip;
+        try {
+            clip = AudioDecoder.decode(file);
+            cache.put(file, clip);
+            return clip;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to decode " + file.getName() + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.gpt_sovits_demo;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns the loaded models for the whole process, so they outlive the activity. Rotating the
+ * screen or switching dark mode recreates {@link MainActivity}, but the new instance finds its
+ * languages still loaded in the same pool, and the TTS service shares them too. Handles are only
+ * freed when the pool evicts them, when the system reports memory pressure, or with the process.
+ * <p>
+ * The scheduler lives here as well, because a handle must only be used from the lane thread of
+ * its language, whichever component asks for it. So does the history, through a
+ * {@link HistoryRecorder}: a result that finishes while the activity is being recreated is still
+ * written and indexed, and shows up in the new one.
+ */
+public final class TtsRuntime implements ComponentCallbacks2 {
+    private static final String TAG = "TtsRuntime";
+    private static final long WAVEFORM_CACHE_BYTES = 2L << 20;
+    private static final long PCM_CACHE_BYTES = 16L << 20;
+    private static TtsRuntime instance;
+
+    private final Context context;
+    private final SharedPreferences pref;
+    private final TtsEngine engine = new NativeTtsEngine();
+    private final InferenceScheduler<Lang> scheduler = new InferenceScheduler<>();
+    private final Metrics metrics = new Metrics(256);
+    private final ModelPool modelPool;
+    private final ModelStager modelStager;
+    private final ModelManager modelManager;
+    private final ResultCache resultCache;
+    private final HistoryStore historyStore;
+    private final HistoryIndex historyIndex;
+    private final WaveformCache waveformCache;
+    private final PcmCache pcmCache = new PcmCache(PCM_CACHE_BYTES);
+    private final HistoryRecorder historyRecorder;
+    // Writes results and picks their file names, so two results cannot claim the same file
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // Every change to the history index runs here, in order
+    private final ExecutorService historyExecutor = Executors.newSingleThreadExecutor();
+    private volatile ModelManager.Listener listener;
+
+    public static synchronized TtsRuntime get(Context context) {
+        if (instance == null) instance = new TtsRuntime(context.getApplicationContext());
+        return instance;
+    }
+
+    private TtsRuntime(Context context) {
+        this.context = context;
+        pref = context.getSharedPreferences("PAInference", Context.MODE_PRIVATE);
+        modelPool = new ModelPool(getPoolBudget());
+        resultCache = new ResultCache(new File(context.getCacheDir(), "results"), pref.getLong("resultCacheMb", 200) << 20);
+        historyStore = new HistoryStore(new File(context.getCacheDir(), "history"));
+        historyIndex = new HistoryIndex(new File(context.getCacheDir(), "history.log"));
+        waveformCache = new WaveformCache(new File(context.getCacheDir(), "waveforms"), AudioDecoder::decode, WAVEFORM_CACHE_BYTES);
+        historyRecorder = new HistoryRecorder(historyStore, historyIndex, waveformCache, resultCache, pcmCache,
+                ioExecutor, historyExecutor, context.getMainExecutor());
+        modelStager = new ModelStager(context, new File(context.getCacheDir(), "models"), pref.getBoolean("verifyModelHash", false),
+                pref.getInt("stagingWorkers", 4));
+        modelManager = new ModelManager(engine, modelPool, new ModelManager.Source() {
+            @Override
+            public Map<String, String> stage(Lang lang, ParallelCopier.ProgressListener listener) {
+                String folder = pref.getString("selected", null);
+                return folder != null ? modelStager.stage(folder, lang, listener) : null;
+            }
+
+            @Override
+            public String stageReference(Lang lang) {
+                String folder = pref.getString("selected", null);
+                return folder != null ? modelStager.stageReference(folder, lang) : null;
+            }
+
+            @Override
+            public String getReferenceFingerprint(Lang lang) {
+                return modelStager.getFingerprint(lang, ModelStager.REFERENCE);
+            }
+        }, new ModelManager.Listener() {
+            @Override
+            public void onStatus(String text, int percent) {
+                ModelManager.Listener current = listener;
+                if (current != null) current.onStatus(text, percent);
+            }
+
+            @Override
+            public void onStatusCleared() {
+                ModelManager.Listener current = listener;
+                if (current != null) current.onStatusCleared();
+            }
+
+            @Override
+            public void onLoaded(Lang lang) {
+                Log.i(TAG, "Loaded " + lang.name());
+                ModelManager.Listener current = listener;
+                if (current != null) current.onLoaded(lang);
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.e(TAG, message);
+                ModelManager.Listener current = listener;
+                if (current != null) current.onError(message);
+            }
+        });
+        context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Shows loading progress and errors in the visible activity. Replaces the previous listener.
+     */
+    public void setListener(ModelManager.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Removes {@code listener} unless a newer activity has already replaced it.
+     */
+    public void clearListener(ModelManager.Listener listener) {
+        if (this.listener == listener) this.listener = null;
+    }
+
+    /**
+     * Changes how much memory loaded models may use, in MB, or 0 for a quarter of physical memory.
+     * Models over the new budget are freed right away, least recently used first.
+     */
+    public void setPoolBudgetMb(long budgetMb) {
+        pref.edit().putLong("poolBudgetMb", budgetMb).apply();
+        modelPool.setBudget(getPoolBudget());
+    }
+
+    /**
+     * Changes how much disk space replayable results may use, in MB. Evicts on the I/O thread,
+     * which also adds results.
+     */
+    public void setResultCacheMb(long quotaMb) {
+        pref.edit().putLong("resultCacheMb", quotaMb).apply();
+        ioExecutor.execute(() -> resultCache.setQuota(quotaMb << 20));
+    }
+
+    public void setVerifyModelHash(boolean verify) {
+        pref.edit().putBoolean("verifyModelHash", verify).apply();
+        modelStager.setVerifyContent(verify);
+    }
+
+    public TtsEngine getEngine() {
+        return engine;
+    }
+
+    public InferenceScheduler<Lang> getScheduler() {
+        return scheduler;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public ModelPool getModelPool() {
+        return modelPool;
+    }
+
+    public ModelStager getModelStager() {
+        return modelStager;
+    }
+
+    public ModelManager getModelManager() {
+        return modelManager;
+    }
+
+    /**
+     * One instance per process, so a recreated activity does not evict files of the old one.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    public HistoryIndex getHistoryIndex() {
+        return historyIndex;
+    }
+
+    public WaveformCache getWaveformCache() {
+        return waveformCache;
+    }
+
+    /**
+     * Decoded clips for playback, shared by every activity instance, so a result saved after a
+     * recreate is still ready to play.
+     */
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    public HistoryRecorder getHistoryRecorder() {
+        return historyRecorder;
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    public ExecutorService getHistoryExecutor() {
+        return historyExecutor;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        modelPool.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        modelPool.onTrimMemory(ModelPool.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    private long getPoolBudget() {
+        long budgetMb = pref.getLong("poolBudgetMb", 0);
+        if (budgetMb > 0) return budgetMb << 20;
+
+        // Default to a quarter of physical memory, enough for all three languages on large devices
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        context.getSystemService(ActivityManager.class).getMemoryInfo(memoryInfo);
+        return memoryInfo.totalMem / 4;
+    }
+}
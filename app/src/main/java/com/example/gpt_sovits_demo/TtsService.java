@@ -0,0 +1,205 @@
+package com.example.gpt_sovits_demo;
+
+import android.content.SharedPreferences;
+import android.media.AudioFormat;
+import android.speech.tts.SynthesisCallback;
+import android.speech.tts.SynthesisRequest;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.TextToSpeechService;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Makes the models available to every app as a system text-to-speech engine. Loaded models are
+ * shared with {@link MainActivity} through {@link TtsRuntime}, so requests after the first one
+ * only pay for inference. Each sentence is handed to the client as soon as it is synthesized
+ * instead of after the whole utterance.
+ * <p>
+ * Locales map to languages by their ISO 639-2 code: {@code yue}, and {@code zho} in Hong Kong or
+ * Macau, are Cantonese, other {@code zho} is Mandarin and {@code eng} is English. The model folder
+ * and reference texts are the ones chosen in {@link MainActivity}.
+ */
+public class TtsService extends TextToSpeechService {
+    private static final int SAMPLE_RATE = 32000;
+    private static final String GROUP = "tts";
+    private static final float[] END = new float[0];
+
+    private SharedPreferences pref;
+    private final TextSegmenter textSegmenter = new TextSegmenter(12);
+    private TtsEngine engine;
+    private InferenceScheduler<Lang> scheduler;
+    private ModelManager modelManager;
+    private volatile String[] language = {"yue", "HKG", ""};
+
+    @Override
+    public void onCreate() {
+        pref = getSharedPreferences("PAInference", MODE_PRIVATE);
+        TtsRuntime runtime = TtsRuntime.get(this);
+        engine = runtime.getEngine();
+        scheduler = runtime.getScheduler();
+        modelManager = runtime.getModelManager();
+        // The base class queries the default language, so everything it needs must exist first
+        super.onCreate();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        scheduler.cancel(GROUP);
+    }
+
+    @Override
+    protected int onIsLanguageAvailable(String lang, String country, String variant) {
+        Lang target = toLang(lang, country);
+        if (target == null) return TextToSpeech.LANG_NOT_SUPPORTED;
+        if (pref.getString("selected", null) == null) return TextToSpeech.LANG_MISSING_DATA;
+        return country == null || country.isEmpty() ? TextToSpeech.LANG_AVAILABLE : TextToSpeech.LANG_COUNTRY_AVAILABLE;
+    }
+
+    @Override
+    protected String[] onGetLanguage() {
+        return language;
+    }
+
+    /**
+     * Loads the model of the language in the background, so the first utterance does not wait
+     * for it.
+     */
+    @Override
+    protected int onLoadLanguage(String lang, String country, String variant) {
+        int result = onIsLanguageAvailable(lang, country, variant);
+        if (result < TextToSpeech.LANG_AVAILABLE) return result;
+
+        Lang target = toLang(lang, country);
+        language = new String[]{lang, country != null ? country : "", ""};
+        String refText = getRefText(target);
+        scheduler.submit(target, InferenceScheduler.Priority.BATCH, "load:" + target.name() + "\n" + refText, null,
+                ticket -> {
+                    try (ModelHandle.Lease lease = modelManager.prepare(refText, target, ticket, new Metrics.Trace("tts", target.name()))) {
+                        return lease != null;
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    protected void onStop() {
+        scheduler.cancel(GROUP);
+    }
+
+    /**
+     * Synthesizes the request sentence by sentence on the lane of its language, while this thread
+     * passes every finished sentence on to the client.
+     */
+    @Override
+    protected void onSynthesizeText(SynthesisRequest request, SynthesisCallback callback) {
+        Lang lang = toLang(request.getLanguage(), request.getCountry());
+        if (lang == null) {
+            callback.error(TextToSpeech.ERROR_INVALID_REQUEST);
+            return;
+        }
+        String text = TextFrontEnd.normalize(request.getCharSequenceText().toString(), lang);
+        List<String> segments = textSegmenter.split(text);
+        if (segments.isEmpty()) {
+            callback.start(SAMPLE_RATE, AudioFormat.ENCODING_PCM_16BIT, 1);
+            callback.done();
+            return;
+        }
+
+        String refText = getRefText(lang);
+        BlockingQueue<float[]> parts = new LinkedBlockingQueue<>();
+        CompletableFuture<Boolean> future = scheduler.submit(lang, InferenceScheduler.Priority.INTERACTIVE, null, GROUP,
+                ticket -> {
+                    Metrics.Trace trace = new Metrics.Trace("tts", lang.name());
+                    try (ModelHandle.Lease lease = modelManager.prepare(refText, lang, ticket, trace)) {
+                        if (lease == null) return false;
+                        long langId = TtsEngine.langId(lang);
+                        for (String segment : segments) {
+                            if (ticket.isCancelled()) return false;
+                            float[] samples = engine.infer(lease.getPointer(), segment, langId);
+                            if (samples == null) return false;
+                            parts.add(samples);
+                        }
+                        return true;
+                    }
+                });
+        future.whenComplete((ok, err) -> parts.add(END));
+
+        if (callback.start(SAMPLE_RATE, AudioFormat.ENCODING_PCM_16BIT, 1) != TextToSpeech.SUCCESS) {
+            scheduler.cancel(GROUP);
+            return;
+        }
+        byte[] buffer = new byte[callback.getMaxBufferSize() & ~1];
+        try {
+            float[] samples;
+            while ((samples = parts.take()) != END) {
+                if (!write(callback, samples, buffer)) {
+                    scheduler.cancel(GROUP);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scheduler.cancel(GROUP);
+            return;
+        }
+
+        if (Boolean.TRUE.equals(future.getNow(false))) {
+            callback.done();
+        } else if (!callback.hasFinished()) {
+            callback.error(TextToSpeech.ERROR_SYNTHESIS);
+        }
+    }
+
+    /**
+     * Converts {@code samples} to 16-bit PCM and passes them on in blocks the client accepts.
+     */
+    private static boolean write(SynthesisCallback callback, float[] samples, byte[] buffer) {
+        int length = 0;
+        for (float sample : samples) {
+            int value = (int) (Math.max(-1f, Math.min(1f, sample)) * 32767f);
+            buffer[length++] = (byte) value;
+            buffer[length++] = (byte) (value >> 8);
+            if (length == buffer.length) {
+                if (callback.audioAvailable(buffer, 0, length) != TextToSpeech.SUCCESS) return false;
+                length = 0;
+            }
+        }
+        return length == 0 || callback.audioAvailable(buffer, 0, length) == TextToSpeech.SUCCESS;
+    }
+
+    private String getRefText(Lang lang) {
+        switch (lang) {
+            case YUE:
+                return pref.getString("refYue", getString(R.string.ref_yue));
+            case ZH:
+                return pref.getString("refZh", getString(R.string.ref_zh));
+            default:
+                return pref.getString("refEn", getString(R.string.ref_en));
+        }
+    }
+
+    /**
+     * Language of an ISO 639-2 (or 639-1) code and ISO 3166 country, or null if it has no model.
+     */
+    static Lang toLang(String language, String country) {
+        if (language == null) return null;
+        switch (language.toLowerCase()) {
+            case "yue":
+                return Lang.YUE;
+            case "zho":
+            case "chi":
+            case "zh":
+                return "HKG".equalsIgnoreCase(country) || "HK".equalsIgnoreCase(country)
+                        || "MAC".equalsIgnoreCase(country) || "MO".equalsIgnoreCase(country) ? Lang.YUE : Lang.ZH;
+            case "eng":
+            case "en":
+                return Lang.EN;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.gpt_sovits_demo;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Draws a {@link Waveform} as one vertical line per column, from the smallest to the largest
+ * sample in that part of the clip. Draws nothing until a waveform is set.
+ */
+public class WaveformView extends View {
+    private static final int COLUMN_PX = 2;
+
+    private final Paint paint = new Paint();
+    private Waveform waveform;
+    private float[] mins = new float[0];
+    private float[] maxs = new float[0];
+    private float[] lines = new float[0];
+    private int columns;
+
+    public WaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        TypedArray colors = context.obtainStyledAttributes(new int[]{android.R.attr.textColorSecondary});
+        paint.setColor(colors.getColor(0, 0xFF808080));
+        colors.recycle();
+        paint.setStrokeWidth(COLUMN_PX / 2f);
+    }
+
+    public void setWaveform(Waveform waveform) {
+        if (this.waveform == waveform) return;
+        this.waveform = waveform;
+        columns = 0;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        columns = 0;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (waveform == null) return;
+
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (width <= 0 || height <= 0) return;
+
+        // Reduced once per waveform and size, not on every frame
+        if (columns == 0) {
+            columns = Math.max(1, width / COLUMN_PX);
+            if (mins.length < columns) {
+                mins = new float[columns];
+                maxs = new float[columns];
+                lines = new float[columns * 4];
+            }
+            waveform.render(columns, mins, maxs);
+            float middle = getPaddingTop() + height / 2f;
+            float scale = height / 2f;
+            for (int c = 0; c < columns; c++) {
+                float x = getPaddingLeft() + c * COLUMN_PX + COLUMN_PX / 2f;
+                lines[4 * c] = x;
+                lines[4 * c + 1] = middle - maxs[c] * scale;
+                lines[4 * c + 2] = x;
+                // At least a pixel, so silence shows as a flat line
+                lines[4 * c + 3] = Math.max(middle - mins[c] * scale, lines[4 * c + 1] + 1);
+            }
+        }
+        canvas.drawLines(lines, 0, columns * 4, paint);
+    }
+}
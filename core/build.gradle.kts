@@ -0,0 +1,36 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    jmhVersion = libs.versions.jmhCore
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    // Narrow a run with e.g. ./gradlew :core:jmh -PjmhIncludes=WavWriter
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes = listOf(it) }
+}
+
+// ./gradlew :core:loadTest -PloadArgs="requests=500 rate=10 budgetMb=128"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs LoadGenerator against the fake engine."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "com.example.gpt_sovits_demo.LoadGenerator"
+    providers.gradleProperty("loadArgs").orNull?.let { args(it.split(" ")) }
+}
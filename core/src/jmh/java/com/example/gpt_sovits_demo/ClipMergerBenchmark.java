@@ -0,0 +1,97 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging history clips with a gap and with a crossfade, against decoding every clip and writing
+ * the joined samples, for a handful of sentences up to a chapter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClipMergerBenchmark {
+    private static final int SAMPLE_RATE = 32000;
+    private static final int SECONDS = 10;
+
+    @Param({"5", "50"})
+    public int clips;
+
+    private File dir;
+    private File output;
+    private List<File> files;
+    private ClipMerger merger;
+    private WavWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        dir = Files.createTempDirectory("merge").toFile();
+        output = new File(dir, "merged.wav");
+        writer = new WavWriter();
+        merger = new ClipMerger(file -> {
+            throw new IOException("Not a WAV file: " + file.getName());
+        });
+        WavSpec spec = WavSpec.forBits(SAMPLE_RATE, 16, 1);
+        float[] samples = new float[SECONDS * SAMPLE_RATE];
+        files = new ArrayList<>();
+        for (int i = 0; i < clips; i++) {
+            for (int j = 0; j < samples.length; j++) samples[j] = random.nextFloat() * 2 - 1;
+            File file = new File(dir, i + ".wav");
+            writer.write(file, spec, samples);
+            files.add(file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : files) file.delete();
+        output.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public long gap() throws IOException {
+        return merger.merge(files, output, 300, 0);
+    }
+
+    @Benchmark
+    public long crossfade() throws IOException {
+        return merger.merge(files, output, 0, 50);
+    }
+
+    @Benchmark
+    public long decodeAndWrite() throws IOException {
+        int gap = SAMPLE_RATE * 300 / 1000;
+        List<float[]> decoded = new ArrayList<>();
+        int total = 0;
+        for (File file : files) {
+            float[] samples = WavReader.read(file).samples;
+            decoded.add(samples);
+            total += samples.length + gap;
+        }
+        float[] joined = new float[total - gap];
+        int position = 0;
+        for (float[] samples : decoded) {
+            System.arraycopy(samples, 0, joined, position, samples.length);
+            position += samples.length + gap;
+        }
+        writer.write(output, WavSpec.forBits(SAMPLE_RATE, 16, 1), joined);
+        return joined.length;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing a history directory with thousands of clips, compared with reading the first page from
+ * the history index, and naming a new clip when many clips share the same text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryScanBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int files;
+
+    private File dir;
+    private HistoryStore store;
+    private HistoryIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history").toFile();
+        store = new HistoryStore(dir);
+        for (int i = 0; i < files; i++) {
+            // A tenth of the clips repeat the same text, so naming has to probe past them
+            String name = i % 10 == 0 ? "Hello_" + i + ".wav" : "clip_" + i + ".wav";
+            new File(dir, name).createNewFile();
+        }
+        new File(dir, "Hello.wav").createNewFile();
+        new File(dir, "ref.wav").createNewFile();
+        new File(dir, "metrics.json").createNewFile();
+
+        index = new HistoryIndex(new File(dir, "history.log"));
+        index.load();
+        for (int i = 0; i < files; i++) {
+            index.add(new File(dir, "clip_" + i + ".wav").getAbsolutePath(), "clip " + i, Lang.EN, 32000, 32000, 64044);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) child.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public List<File> scan() {
+        return store.scan();
+    }
+
+    @Benchmark
+    public List<HistoryIndex.Entry> indexFirstPage() throws IOException {
+        HistoryIndex fresh = new HistoryIndex(new File(dir, "history.log"));
+        fresh.load();
+        return fresh.page(0, 50);
+    }
+
+    @Benchmark
+    public File newFile() {
+        return store.newFile("Hello");
+    }
+}
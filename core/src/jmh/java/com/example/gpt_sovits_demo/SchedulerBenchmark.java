@@ -0,0 +1,63 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a request onto a lane and its result back, with no model work in between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchedulerBenchmark {
+    private static final int BURST = 100;
+
+    private InferenceScheduler<Lang> scheduler;
+
+    @Setup
+    public void setUp() {
+        scheduler = new InferenceScheduler<>();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public Integer roundTrip() {
+        return scheduler.submit(Lang.YUE, InferenceScheduler.Priority.INTERACTIVE, null, null, ticket -> 1).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            Lang lang = Lang.values()[i % 3];
+            InferenceScheduler.Priority priority = i % 4 == 0 ? InferenceScheduler.Priority.INTERACTIVE : InferenceScheduler.Priority.BATCH;
+            futures[i] = scheduler.submit(lang, priority, null, "burst" + (i % 3), ticket -> 1);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void coalesced() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            futures[i] = scheduler.submit(Lang.EN, InferenceScheduler.Priority.BATCH, "same" + (i % 10), null, ticket -> 1);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a model-sized set of files the way a language is staged, with a varying number of
+ * workers and with or without hashing on the way. Throughput is the total size divided by the
+ * reported time. {@link #probeAll} is what finding the files in the blob store costs instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StagingBenchmark {
+    // Roughly the relative sizes of vits, t2s decoders, ssl, bert, g2pW and the reference
+    private static final int[] SIZES_MB = {160, 90, 90, 40, 30, 20, 8, 1};
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"false", "true"})
+    public boolean digest;
+
+    private File sourceDir;
+    private File targetDir;
+    private List<ParallelCopier.Task> tasks;
+
+    @Setup
+    public void setUp() throws IOException {
+        sourceDir = Files.createTempDirectory("staging-source").toFile();
+        targetDir = Files.createTempDirectory("staging-target").toFile();
+        byte[] block = new byte[1024 * 1024];
+        for (int i = 0; i < block.length; i++) block[i] = (byte) (i * 31);
+
+        tasks = new ArrayList<>();
+        for (int i = 0; i < SIZES_MB.length; i++) {
+            File source = new File(sourceDir, "model" + i + ".onnx");
+            try (RandomAccessFile out = new RandomAccessFile(source, "rw")) {
+                for (int mb = 0; mb < SIZES_MB[i]; mb++) out.write(block);
+            }
+            tasks.add(new ParallelCopier.Task(() -> new FileInputStream(source).getChannel(),
+                    new File(targetDir, source.getName()), source.length(), digest));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        deleteAll(sourceDir);
+        deleteAll(targetDir);
+    }
+
+    @Benchmark
+    public void copyAll() throws IOException {
+        new ParallelCopier(workers).copyAll(tasks, null);
+    }
+
+    @Benchmark
+    public void probeAll(Blackhole blackhole) throws IOException {
+        for (File source : sourceDir.listFiles()) {
+            try (FileChannel channel = new FileInputStream(source).getChannel()) {
+                blackhole.consume(BlobStore.probe(channel, source.length()));
+            }
+        }
+    }
+
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzing a mixed Cantonese/English announcement for the first time, and again when it is
+ * repeated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextFrontEndBenchmark {
+    private static final String TEXT = "往 Tsuen Wan 嘅列車將於 3 mins 後到達 2 號月台。"
+            + "The next train to Tsuen Wan will arrive at Platform 2 in 3 minutes. 今日係 2024-05-01，氣溫 28°C。";
+
+    private TextFrontEnd frontEnd;
+
+    @Setup
+    public void setUp() {
+        frontEnd = new TextFrontEnd(64);
+        frontEnd.setRules("MTR = yue\n(?i)central = yue");
+    }
+
+    @Benchmark
+    public List<TextFrontEnd.Run> firstTime() {
+        // Setting the rules empties the cache
+        frontEnd.setRules("MTR = yue\n(?i)central = yue");
+        return frontEnd.analyze(TEXT, Lang.YUE);
+    }
+
+    @Benchmark
+    public List<TextFrontEnd.Run> repeated() {
+        return frontEnd.analyze(TEXT, Lang.YUE);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Float to PCM conversion alone, complete WAV files and FLAC files, and reading a WAV file back
+ * for playback, for utterances of a few words up to a long paragraph.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WavWriterBenchmark {
+    private static final int SAMPLE_RATE = 32000;
+
+    @Param({"1", "5", "30"})
+    public int seconds;
+
+    @Param({"16", "24", "32"})
+    public int bits;
+
+    private float[] samples;
+    private WavSpec spec;
+    private ByteBuffer buffer;
+    private WavWriter writer;
+    private FlacEncoder flacEncoder;
+    private File file;
+    private File saved;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        samples = new float[seconds * SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) samples[i] = random.nextFloat() * 2 - 1;
+        spec = WavSpec.forBits(SAMPLE_RATE, bits, 1);
+        buffer = ByteBuffer.allocateDirect(samples.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        writer = new WavWriter();
+        flacEncoder = new FlacEncoder();
+        file = File.createTempFile("bench", ".wav");
+        saved = File.createTempFile("bench", ".wav");
+        writer.write(saved, spec, samples);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        saved.delete();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        WavWriter.encode(buffer, spec, samples, 0, samples.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        writer.write(file, spec, samples);
+        return file.length();
+    }
+
+    @Benchmark
+    public long flac() throws IOException {
+        // Float results are kept as WAV
+        if (spec.floatingPoint) return 0;
+        flacEncoder.write(file, spec, samples);
+        return file.length();
+    }
+
+    @Benchmark
+    public AudioClip read() throws IOException {
+        return WavReader.read(saved);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gpt_sovits_demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the peaks of a history clip by scanning the mapped file and by decoding it first,
+ * loading them from a sidecar instead, and reducing them for a row of the list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WaveformBenchmark {
+    private static final int SAMPLE_RATE = 32000;
+    private static final int COLUMNS = 400;
+
+    @Param({"5", "60", "600"})
+    public int seconds;
+
+    private File wav;
+    private File sidecar;
+    private Waveform waveform;
+    private final float[] mins = new float[COLUMNS];
+    private final float[] maxs = new float[COLUMNS];
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        float[] samples = new float[seconds * SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) samples[i] = random.nextFloat() * 2 - 1;
+        wav = File.createTempFile("bench", ".wav");
+        new WavWriter().write(wav, WavSpec.forBits(SAMPLE_RATE, 16, 1), samples);
+        waveform = Waveform.of(samples, SAMPLE_RATE);
+        sidecar = File.createTempFile("bench", ".peaks");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+            waveform.write(out);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wav.delete();
+        sidecar.delete();
+    }
+
+    @Benchmark
+    public Waveform scan() throws IOException {
+        return Waveform.scan(wav);
+    }
+
+    @Benchmark
+    public Waveform decodeAndScan() throws IOException {
+        AudioClip clip = WavReader.read(wav);
+        return Waveform.of(clip.samples, clip.sampleRate);
+    }
+
+    @Benchmark
+    public Waveform sidecar() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            return Waveform.read(in);
+        }
+    }
+
+    @Benchmark
+    public float[] render() {
+        waveform.render(COLUMNS, mins, maxs);
+        return maxs;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.gpt_sovits_demo;
+
+/**
+ * Decoded mono audio ready to be played.
+ */
+public class AudioClip {
+    public final float[] samples;
+    public final int sampleRate;
+
+    public AudioClip(float[] samples, int sampleRate) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    public long getDurationMillis() {
+        return sampleRate > 0 ? (long) samples.length * 1000 / sampleRate : 0;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Synthesizes a script of utterances into a folder of WAV files plus a manifest. Lines are grouped
+ * by language to keep model switches to a minimum. All lines of a group are handed to the
+ * synthesizer up front, and each result is encoded and written on the I/O executor while the next
+ * line is synthesized. Finished lines are appended to the manifest as they complete, so an
+ * interrupted job resumes with the lines that are still missing.
+ */
+public class BatchJob {
+    private static final String TAG = "BatchJob";
+    private static final String MANIFEST = "manifest.csv";
+    private static final String HEADER = "index,lang,file,samples,text";
+
+    public static class Line {
+        public final int index;
+        public final Lang lang;
+        public final String text;
+
+        public Line(int index, Lang lang, String text) {
+            this.index = index;
+            this.lang = lang;
+            this.text = text;
+        }
+    }
+
+    public interface Synthesizer {
+        CompletableFuture<float[]> submit(Line line);
+    }
+
+    public interface Listener {
+        void onProgress(int done, int failed, int total);
+
+        void onFinished(int done, int failed, int total);
+    }
+
+    private final File outputDir;
+    private final List<Line> lines;
+    private final WavSpec spec;
+    private final WavWriter wavWriter = new WavWriter();
+
+    public BatchJob(File outputDir, List<Line> lines, WavSpec spec) {
+        this.outputDir = outputDir;
+        this.lines = lines;
+        this.spec = spec;
+    }
+
+    /**
+     * Parses one utterance per line. A line may start with a language column ({@code yue,text},
+     * {@code en\ttext}); otherwise {@code defaultLang} is used. Blank lines and lines starting
+     * with {@code #} are skipped. The text column may be quoted CSV style.
+     */
+    public static List<Line> parse(String script, Lang defaultLang) {
+        List<Line> lines = new ArrayList<>();
+        for (String raw : script.split("\r?\n")) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            Lang lang = defaultLang;
+            int separator = indexOfSeparator(line);
+            if (separator > 0) {
+                Lang column = parseLang(line.substring(0, separator).trim());
+                if (column != null) {
+                    lang = column;
+                    line = line.substring(separator + 1).trim();
+                }
+            }
+            line = unquote(line);
+            if (!line.isEmpty()) lines.add(new Line(lines.size(), lang, line));
+        }
+        return lines;
+    }
+
+    /**
+     * Identifies a script so that importing the same script again resumes the same job.
+     */
+    public static String id(String script, Lang defaultLang) {
+        return Hashes.key(defaultLang.name(), script).substring(0, 16);
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * Runs the remaining lines, language by language in {@code groupOrder}. Languages missing from
+     * {@code groupOrder} run last.
+     */
+    public CompletableFuture<Void> run(Synthesizer synthesizer, Executor io, List<Lang> groupOrder, Listener listener) {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("Cannot create " + outputDir));
+            return failed;
+        }
+
+        Set<Integer> finished = readFinished();
+        Map<Lang, List<Line>> groups = new LinkedHashMap<>();
+        for (Lang lang : groupOrder) groups.put(lang, new ArrayList<>());
+        for (Line line : lines) {
+            if (finished.contains(line.index)) continue;
+            List<Line> group = groups.get(line.lang);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(line.lang, group);
+            }
+            group.add(line);
+        }
+
+        int total = lines.size();
+        AtomicInteger done = new AtomicInteger(finished.size());
+        AtomicInteger failed = new AtomicInteger();
+        listener.onProgress(done.get(), failed.get(), total);
+
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (List<Line> group : groups.values()) {
+            if (group.isEmpty()) continue;
+            chain = chain.thenCompose(ignored -> runGroup(group, synthesizer, io, () -> {
+                listener.onProgress(done.incrementAndGet(), failed.get(), total);
+            }, () -> {
+                listener.onProgress(done.get(), failed.incrementAndGet(), total);
+            }));
+        }
+        return chain.thenRunAsync(() -> {
+            sortManifest();
+            listener.onFinished(done.get(), failed.get(), total);
+        }, io);
+    }
+
+    private CompletableFuture<Void> runGroup(List<Line> group, Synthesizer synthesizer, Executor io, Runnable onDone, Runnable onFailed) {
+        List<CompletableFuture<Void>> writes = new ArrayList<>(group.size());
+        for (Line line : group) {
+            writes.add(synthesizer.submit(line)
+                    .thenAcceptAsync(samples -> {
+                        try {
+                            write(line, samples);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }, io)
+                    .handle((ignored, err) -> {
+                        if (err != null) {
+                            CoreLog.w(TAG, "Line " + (line.index + 1) + " failed: " + err.getMessage());
+                            onFailed.run();
+                        } else {
+                            onDone.run();
+                        }
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private void write(Line line, float[] samples) throws IOException {
+        if (samples == null) throw new IOException("Inference failed");
+
+        String baseName = line.text.trim().replaceAll("[^\\w.-]", "_");
+        if (baseName.length() > 40) baseName = baseName.substring(0, 40);
+        String fileName = String.format(Locale.US, "%04d_%s_%s.wav", line.index + 1, line.lang.name().toLowerCase(), baseName);
+        wavWriter.write(new File(outputDir, fileName), spec, samples);
+
+        // The manifest doubles as the progress log, a line only counts once its WAV is complete
+        synchronized (this) {
+            File manifest = new File(outputDir, MANIFEST);
+            boolean header = !manifest.isFile();
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(manifest, true), StandardCharsets.UTF_8)) {
+                if (header) writer.write(HEADER + "\n");
+                writer.write(line.index + "," + line.lang.name().toLowerCase() + "," + fileName + "," + samples.length + "," + quote(line.text) + "\n");
+            }
+        }
+    }
+
+    private Set<Integer> readFinished() {
+        Set<Integer> finished = new HashSet<>();
+        for (String row : readManifestRows()) {
+            try {
+                int index = Integer.parseInt(row.substring(0, row.indexOf(',')));
+                String fileName = row.split(",", 5)[2];
+                if (new File(outputDir, fileName).isFile()) finished.add(index);
+            } catch (RuntimeException e) {
+                CoreLog.w(TAG, "Ignoring manifest row: " + row);
+            }
+        }
+        return finished;
+    }
+
+    private List<String> readManifestRows() {
+        List<String> rows = new ArrayList<>();
+        File manifest = new File(outputDir, MANIFEST);
+        if (!manifest.isFile()) return rows;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                if (!row.isEmpty() && !row.equals(HEADER)) rows.add(row);
+            }
+        } catch (IOException e) {
+            CoreLog.w(TAG, "Cannot read manifest: " + e.getMessage());
+        }
+        return rows;
+    }
+
+    private synchronized void sortManifest() {
+        List<String> rows = readManifestRows();
+        Collections.sort(rows, (a, b) -> Integer.compare(
+                Integer.parseInt(a.substring(0, a.indexOf(','))), Integer.parseInt(b.substring(0, b.indexOf(',')))));
+
+        File partial = new File(outputDir, MANIFEST + ".part");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8)) {
+            writer.write(HEADER + "\n");
+            for (String row : rows) writer.write(row + "\n");
+        } catch (IOException e) {
+            CoreLog.w(TAG, "Cannot sort manifest: " + e.getMessage());
+            return;
+        }
+        if (!partial.renameTo(new File(outputDir, MANIFEST))) partial.delete();
+    }
+
+    private static int indexOfSeparator(String line) {
+        int comma = line.indexOf(',');
+        int tab = line.indexOf('\t');
+        if (comma < 0) return tab;
+        if (tab < 0) return comma;
+        return Math.min(comma, tab);
+    }
+
+    static Lang parseLang(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "yue":
+            case "cantonese":
+                return Lang.YUE;
+            case "zh":
+            case "mandarin":
+                return Lang.ZH;
+            case "en":
+            case "english":
+                return Lang.EN;
+            default:
+                return null;
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"").replace("\n", " ") + "\"";
+    }
+}
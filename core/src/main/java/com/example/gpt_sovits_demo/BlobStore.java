@@ -0,0 +1,207 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Content-addressed store for model files that several languages share. Each distinct file is kept
+ * once as {@code <sha256>} in the store directory and placed into the language directories as a
+ * hard link, falling back to a plain copy where links are not supported.
+ * <p>
+ * To find out whether a source file is already stored without reading all of it, files are also
+ * indexed by a probe: the size plus a hash over a few windows spread across the content. A probe
+ * hit is a candidate only; callers that need certainty compare the full hash.
+ */
+public class BlobStore {
+    private static final String TAG = "BlobStore";
+    private static final String INDEX = "index.properties";
+    private static final int EDGE_WINDOW = 1 << 20;
+    private static final int INNER_WINDOW = 64 * 1024;
+    private static final int INNER_WINDOWS = 16;
+
+    private final File dir;
+    private final Properties index = new Properties();
+    private final Set<String> pinned = new HashSet<>();
+
+    public BlobStore(File dir) {
+        this.dir = dir;
+        File file = new File(dir, INDEX);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                index.load(in);
+            } catch (IOException e) {
+                CoreLog.w(TAG, "Ignoring unreadable blob index: " + e.getMessage());
+                index.clear();
+            }
+        }
+    }
+
+    /**
+     * Probe of the {@code size} bytes readable from {@code channel}: the first and last megabyte
+     * and {@value #INNER_WINDOWS} evenly spaced windows in between. Reads at most a few megabytes
+     * however large the file is.
+     */
+    public static String probe(FileChannel channel, long size) throws IOException {
+        MessageDigest digest = Hashes.sha256();
+        digest.update(Long.toString(size).getBytes());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(EDGE_WINDOW);
+        if (size <= 2L * EDGE_WINDOW + INNER_WINDOWS * INNER_WINDOW) {
+            update(digest, channel, buffer, 0, size);
+        } else {
+            update(digest, channel, buffer, 0, EDGE_WINDOW);
+            long inner = size - 2L * EDGE_WINDOW;
+            for (int i = 0; i < INNER_WINDOWS; i++) {
+                long position = EDGE_WINDOW + inner * i / INNER_WINDOWS;
+                update(digest, channel, buffer, position, INNER_WINDOW);
+            }
+            update(digest, channel, buffer, size - EDGE_WINDOW, EDGE_WINDOW);
+        }
+        return Hashes.toHex(digest.digest());
+    }
+
+    /**
+     * Full SHA-256 of a local file, for files that were copied before the store existed.
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = Hashes.sha256();
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            update(digest, channel, ByteBuffer.allocateDirect(EDGE_WINDOW), 0, channel.size());
+        }
+        return Hashes.toHex(digest.digest());
+    }
+
+    /**
+     * Hash of a stored blob whose size and probe match, or null if there is none.
+     */
+    public synchronized String find(long size, String probe) {
+        String sha = index.getProperty(probe);
+        if (sha == null) return null;
+        File blob = getBlob(sha);
+        if (blob.length() != size) {
+            index.remove(probe);
+            return null;
+        }
+        pinned.add(sha);
+        return sha;
+    }
+
+    /**
+     * Moves the freshly written {@code file} with content hash {@code sha} into the store, or drops
+     * it if the store already has that content, and puts a link to the blob in its place.
+     */
+    public synchronized void adopt(File file, String sha, String probe) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create blob folder: " + dir.getAbsolutePath());
+        }
+        File blob = getBlob(sha);
+        pinned.add(sha);
+        if (blob.isFile() && blob.length() == file.length()) {
+            if (!file.delete()) throw new IOException("Failed to replace " + file.getName());
+        } else if (!file.renameTo(blob)) {
+            throw new IOException("Failed to move " + file.getName() + " into the blob store");
+        }
+        if (probe != null) index.setProperty(probe, sha);
+        saveIndex();
+        link(sha, file);
+    }
+
+    /**
+     * Places blob {@code sha} at {@code target}, replacing whatever is there.
+     */
+    public synchronized void link(String sha, File target) throws IOException {
+        File blob = getBlob(sha);
+        if (!blob.isFile()) throw new IOException("Missing blob " + sha);
+        pinned.add(sha);
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), blob.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            CoreLog.w(TAG, "Hard link failed, copying " + target.getName() + ": " + e.getMessage());
+            File partial = new File(target.getParentFile(), target.getName() + ".part");
+            Files.copy(blob.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Releases blobs that {@link #find}, {@link #adopt} or {@link #link} kept from being collected
+     * while their references were not yet recorded.
+     */
+    public synchronized void unpin(Collection<String> shas) {
+        pinned.removeAll(shas);
+    }
+
+    /**
+     * Deletes every blob that is neither in {@code referenced} nor pinned, and returns the number
+     * of bytes freed.
+     */
+    public synchronized long retainOnly(Set<String> referenced) {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        long freed = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(INDEX) || referenced.contains(name) || pinned.contains(name)) continue;
+            long length = file.length();
+            if (file.delete()) freed += length;
+        }
+
+        boolean changed = false;
+        for (Iterator<Map.Entry<Object, Object>> it = index.entrySet().iterator(); it.hasNext(); ) {
+            if (!getBlob((String) it.next().getValue()).isFile()) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            try {
+                saveIndex();
+            } catch (IOException e) {
+                CoreLog.w(TAG, "Failed to write blob index: " + e.getMessage());
+            }
+        }
+        return freed;
+    }
+
+    public File getBlob(String sha) {
+        return new File(dir, sha);
+    }
+
+    private void saveIndex() throws IOException {
+        File partial = new File(dir, INDEX + ".part");
+        try (OutputStream out = new FileOutputStream(partial)) {
+            index.store(out, null);
+        }
+        if (!partial.renameTo(new File(dir, INDEX))) {
+            throw new IOException("Failed to write blob index");
+        }
+    }
+
+    private static void update(MessageDigest digest, FileChannel channel, ByteBuffer buffer, long position, long length) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+}
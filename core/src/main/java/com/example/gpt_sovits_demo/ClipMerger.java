@@ -0,0 +1,221 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Joins clips into one WAV file. The sample data of WAV clips in the output format is moved with
+ * {@link FileChannel#transferTo} straight from file to file and never decoded, so merging is
+ * bound by I/O and its memory use does not grow with the clips. Only the few milliseconds around
+ * each join are decoded when clips are crossfaded. Clips in another format, such as FLAC history
+ * entries, are decoded one at a time and encoded on the way.
+ * <p>
+ * The output takes the format of the first clip, or 16-bit mono PCM if that cannot be written.
+ * All clips must have the same sample rate.
+ */
+public class ClipMerger {
+    private static final int SILENCE_BYTES = 64 * 1024;
+    private static final long TRANSFER_CHUNK = 8L << 20;
+
+    public interface Decoder {
+        /**
+         * Decodes a clip that is not a WAV file.
+         */
+        AudioClip decode(File file) throws IOException;
+    }
+
+    /**
+     * One input clip, either still in its file or decoded.
+     */
+    private static final class Part implements Closeable {
+        final String name;
+        final FileChannel channel;
+        final WavReader.Info info;
+        final float[] samples;
+        final int sampleRate;
+        final long frames;
+
+        Part(String name, FileChannel channel, WavReader.Info info) {
+            this.name = name;
+            this.channel = channel;
+            this.info = info;
+            this.samples = null;
+            this.sampleRate = info.sampleRate;
+            this.frames = info.getFrames();
+        }
+
+        Part(String name, AudioClip clip) {
+            this.name = name;
+            this.channel = null;
+            this.info = null;
+            this.samples = clip.samples;
+            this.sampleRate = clip.sampleRate;
+            this.frames = clip.samples.length;
+        }
+
+        float[] read(long frame, int count) throws IOException {
+            if (samples != null) return Arrays.copyOfRange(samples, (int) frame, (int) frame + count);
+
+            ByteBuffer data = ByteBuffer.allocate(count * info.getFrameBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            WavReader.readFully(channel, data, info.dataOffset + frame * info.getFrameBytes());
+            data.flip();
+            return WavReader.decode(data, info.format, info.channels, info.bits, name);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) channel.close();
+        }
+    }
+
+    private final Decoder decoder;
+    private final WavWriter wavWriter = new WavWriter();
+    private final ByteBuffer silence = ByteBuffer.allocateDirect(SILENCE_BYTES);
+
+    public ClipMerger(Decoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Writes {@code clips} one after another into {@code output}. With {@code crossfadeMillis}
+     * above zero, neighbouring clips overlap by that much with an equal-power fade; otherwise
+     * {@code gapMillis} of silence separates them. Returns the number of frames written.
+     */
+    public synchronized long merge(List<File> clips, File output, int gapMillis, int crossfadeMillis) throws IOException {
+        if (clips.isEmpty()) throw new IllegalArgumentException("No clips to merge");
+
+        File partial = new File(output.getParentFile(), output.getName() + ".part");
+        WavSpec spec = null;
+        long frames = 0;
+        try (FileChannel out = new FileOutputStream(partial).getChannel()) {
+            int fadeFrames = 0;
+            int gapFrames = 0;
+            float[] tail = null;
+            for (int i = 0; i < clips.size(); i++) {
+                try (Part part = open(clips.get(i), spec)) {
+                    if (spec == null) {
+                        spec = outputSpec(part);
+                        fadeFrames = (int) ((long) spec.sampleRate * Math.max(crossfadeMillis, 0) / 1000);
+                        gapFrames = fadeFrames > 0 ? 0 : (int) ((long) spec.sampleRate * Math.max(gapMillis, 0) / 1000);
+                        out.position(WavWriter.getHeaderSize(spec));
+                    } else if (part.sampleRate != spec.sampleRate) {
+                        throw new IOException(part.name + " is " + part.sampleRate + " Hz, the other clips are " + spec.sampleRate + " Hz");
+                    }
+
+                    long head = 0;
+                    if (tail != null) {
+                        // The end of the previous clip fades out while this one fades in
+                        int overlap = (int) Math.min(tail.length, part.frames / 2);
+                        float[] mixed = part.read(0, overlap);
+                        crossfade(tail, tail.length - overlap, mixed);
+                        wavWriter.writeSamples(out, spec, tail, 0, tail.length - overlap);
+                        wavWriter.writeSamples(out, spec, mixed, 0, overlap);
+                        frames += tail.length;
+                        head = overlap;
+                        tail = null;
+                    } else if (i > 0 && gapFrames > 0) {
+                        writeSilence(out, (long) gapFrames * spec.getBlockAlign());
+                        frames += gapFrames;
+                    }
+
+                    int hold = i + 1 < clips.size() ? (int) Math.min(fadeFrames, part.frames - head) : 0;
+                    copy(part, head, part.frames - head - hold, out, spec);
+                    frames += part.frames - head - hold;
+                    if (hold > 0) tail = part.read(part.frames - hold, hold);
+                }
+            }
+
+            long dataBytes = frames * spec.getBlockAlign();
+            if (dataBytes > 0xFFFFFFFFL - WavWriter.getHeaderSize(spec)) {
+                throw new IOException("Merged clip exceeds the 4 GB WAV limit");
+            }
+            out.position(0);
+            WavWriter.writeHeader(out, spec, dataBytes);
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(output)) {
+            partial.delete();
+            throw new IOException("Failed to move " + partial.getName() + " into place");
+        }
+        return frames;
+    }
+
+    /**
+     * Opens {@code file} for copying if it is a WAV in {@code spec} (or any WAV, for the first
+     * clip), and decodes it otherwise.
+     */
+    private Part open(File file, WavSpec spec) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        boolean copied = false;
+        try {
+            if (!WavReader.isWav(channel)) return new Part(file.getName(), decoder.decode(file));
+
+            WavReader.Info info = WavReader.probe(channel, file.getName());
+            if (spec == null ? isWritable(info) : info.matches(spec)) {
+                copied = true;
+                return new Part(file.getName(), channel, info);
+            }
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, info.dataOffset, info.dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+            float[] samples = WavReader.decode(data, info.format, info.channels, info.bits, file.getName());
+            return new Part(file.getName(), new AudioClip(samples, info.sampleRate));
+        } finally {
+            if (!copied) channel.close();
+        }
+    }
+
+    private static boolean isWritable(WavReader.Info info) {
+        return info.channels == 1 && (info.format == WavSpec.FORMAT_PCM && (info.bits == 16 || info.bits == 24)
+                || info.format == WavSpec.FORMAT_IEEE_FLOAT && info.bits == 32);
+    }
+
+    private static WavSpec outputSpec(Part part) {
+        if (part.info == null) return new WavSpec(part.sampleRate, 16, 1);
+        return new WavSpec(part.sampleRate, part.info.bits, 1, part.info.format == WavSpec.FORMAT_IEEE_FLOAT);
+    }
+
+    private void copy(Part part, long frame, long count, FileChannel out, WavSpec spec) throws IOException {
+        if (count <= 0) return;
+        if (part.samples != null) {
+            wavWriter.writeSamples(out, spec, part.samples, (int) frame, (int) count);
+            return;
+        }
+
+        long position = part.info.dataOffset + frame * part.info.getFrameBytes();
+        long end = position + count * part.info.getFrameBytes();
+        while (position < end) {
+            long transferred = part.channel.transferTo(position, Math.min(TRANSFER_CHUNK, end - position), out);
+            if (transferred <= 0) throw new IOException("Unexpected end of " + part.name);
+            position += transferred;
+        }
+    }
+
+    private void writeSilence(FileChannel out, long bytes) throws IOException {
+        while (bytes > 0) {
+            silence.clear().limit((int) Math.min(SILENCE_BYTES, bytes));
+            bytes -= silence.remaining();
+            while (silence.hasRemaining()) out.write(silence);
+        }
+    }
+
+    /**
+     * Mixes {@code from.length - offset} samples of {@code from}, starting at {@code offset}, into
+     * {@code into}, fading the first out and the second in at constant power.
+     */
+    private static void crossfade(float[] from, int offset, float[] into) {
+        int length = into.length;
+        for (int i = 0; i < length; i++) {
+            double t = (i + 0.5) / length * Math.PI / 2;
+            into[i] = (float) (from[offset + i] * Math.cos(t) + into[i] * Math.sin(t));
+        }
+    }
+}
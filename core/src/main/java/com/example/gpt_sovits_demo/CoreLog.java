@@ -0,0 +1,44 @@
+package com.example.gpt_sovits_demo;
+
+/**
+ * Logging facade for the platform-independent classes. The app routes it to logcat; on a plain
+ * JVM messages go to standard error.
+ */
+public final class CoreLog {
+    /** Priorities, with the same values as {@code android.util.Log}. */
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public interface Sink {
+        void log(int priority, String tag, String message, Throwable error);
+    }
+
+    private static volatile Sink sink = (priority, tag, message, error) -> {
+        System.err.println(tag + ": " + message);
+        if (error != null) error.printStackTrace();
+    };
+
+    private CoreLog() {
+    }
+
+    public static void setSink(Sink sink) {
+        CoreLog.sink = sink;
+    }
+
+    public static void i(String tag, String message) {
+        sink.log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        sink.log(WARN, tag, message, null);
+    }
+
+    public static void e(String tag, String message) {
+        sink.log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        sink.log(ERROR, tag, message, error);
+    }
+}
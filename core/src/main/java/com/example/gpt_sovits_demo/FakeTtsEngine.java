@@ -0,0 +1,164 @@
+package com.example.gpt_sovits_demo;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for the native engine with configurable latencies, memory cost and failure rates.
+ * Output is derived from the text only, so the same request always produces the same audio, and
+ * failures are drawn from a seeded random source. Use of an unknown or freed model and double
+ * frees throw, which makes lifecycle bugs visible in load tests.
+ */
+public class FakeTtsEngine implements TtsEngine {
+    public static final int SAMPLE_RATE = 32000;
+    private static final int PAGE_SIZE = 4096;
+
+    private final Map<Long, ByteBuffer> models = new ConcurrentHashMap<>();
+    private final AtomicLong nextPointer = new AtomicLong(0x1000);
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong frees = new AtomicLong();
+    private final AtomicLong references = new AtomicLong();
+    private final AtomicLong inferences = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger peakModels = new AtomicInteger();
+    private final Random random;
+
+    private volatile long loadMillis = 2000;
+    private volatile long referenceMillis = 300;
+    private volatile double inferenceMillisPerChar = 20;
+    private volatile int samplesPerChar = SAMPLE_RATE / 8;
+    private volatile int modelBytes = 64 << 20;
+    private volatile double loadFailureRate;
+    private volatile double referenceFailureRate;
+    private volatile double inferenceFailureRate;
+
+    public FakeTtsEngine(long seed) {
+        random = new Random(seed);
+    }
+
+    public void setLoadMillis(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
+
+    public void setReferenceMillis(long referenceMillis) {
+        this.referenceMillis = referenceMillis;
+    }
+
+    public void setInferenceMillisPerChar(double inferenceMillisPerChar) {
+        this.inferenceMillisPerChar = inferenceMillisPerChar;
+    }
+
+    public void setSamplesPerChar(int samplesPerChar) {
+        this.samplesPerChar = samplesPerChar;
+    }
+
+    /**
+     * Memory every loaded model occupies. It is allocated off-heap and touched, so it shows up in
+     * the resident set size like native model weights do.
+     */
+    public void setModelBytes(int modelBytes) {
+        this.modelBytes = modelBytes;
+    }
+
+    public void setFailureRates(double load, double reference, double inference) {
+        this.loadFailureRate = load;
+        this.referenceFailureRate = reference;
+        this.inferenceFailureRate = inference;
+    }
+
+    @Override
+    public long load(Map<String, String> modelFiles) {
+        sleep(loadMillis);
+        if (fails(loadFailureRate)) return 0L;
+
+        ByteBuffer memory = ByteBuffer.allocateDirect(modelBytes);
+        for (int i = 0; i < modelBytes; i += PAGE_SIZE) memory.put(i, (byte) 1);
+
+        long pointer = nextPointer.getAndAdd(16);
+        models.put(pointer, memory);
+        loads.incrementAndGet();
+        peakModels.accumulateAndGet(models.size(), Math::max);
+        return pointer;
+    }
+
+    @Override
+    public boolean processReference(long model, String refAudioPath, String refText, long langId) {
+        check(model);
+        sleep(referenceMillis);
+        references.incrementAndGet();
+        return !fails(referenceFailureRate);
+    }
+
+    @Override
+    public float[] infer(long model, String text, long langId) {
+        check(model);
+        sleep((long) (text.length() * inferenceMillisPerChar));
+        inferences.incrementAndGet();
+        if (fails(inferenceFailureRate)) return null;
+
+        float[] samples = new float[text.length() * samplesPerChar];
+        double step = 2 * Math.PI * (200 + Math.floorMod(text.hashCode(), 400)) / SAMPLE_RATE;
+        for (int i = 0; i < samples.length; i++) samples[i] = (float) (0.3 * Math.sin(step * i));
+        return samples;
+    }
+
+    @Override
+    public void free(long model) {
+        if (models.remove(model) == null) throw new IllegalStateException("Double free of model " + model);
+        frees.incrementAndGet();
+    }
+
+    public int getLoadedModels() {
+        return models.size();
+    }
+
+    public int getPeakModels() {
+        return peakModels.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getFrees() {
+        return frees.get();
+    }
+
+    public long getReferences() {
+        return references.get();
+    }
+
+    public long getInferences() {
+        return inferences.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void check(long model) {
+        if (!models.containsKey(model)) throw new IllegalStateException("Use of unknown or freed model " + model);
+    }
+
+    private boolean fails(double rate) {
+        boolean fail;
+        synchronized (random) {
+            fail = random.nextDouble() < rate;
+        }
+        if (fail) failures.incrementAndGet();
+        return fail;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
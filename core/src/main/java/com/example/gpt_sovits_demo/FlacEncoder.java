@@ -0,0 +1,594 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Lossless FLAC encoder for mono 16-bit and 24-bit audio. 32-bit float audio has no lossless FLAC
+ * form and is rejected. Every block is tried as a constant,
+ * verbatim, fixed polynomial (order 0 to 4) and quantized LPC (order 1 to 8) subframe, and the
+ * smallest is kept. Residuals are Rice coded with the partition order and parameters chosen per
+ * block. Samples are quantized exactly like {@link WavWriter} does, so a FLAC file decodes to the
+ * same PCM as the WAV file it replaces.
+ */
+public class FlacEncoder {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_LPC_ORDER = 8;
+    private static final int LPC_PRECISION = 12;
+    private static final int MAX_PARTITION_ORDER = 6;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int STREAMINFO_SIZE = 34;
+
+    /**
+     * Running totals over every file encoded, for the storage report.
+     */
+    public static class Stats {
+        private long files;
+        private long samples;
+        private long sampleRate;
+        private long wavBytes;
+        private long flacBytes;
+        private long encodeNanos;
+
+        synchronized void add(long samples, int sampleRate, long wavBytes, long flacBytes, long encodeNanos) {
+            this.files++;
+            this.samples += samples;
+            this.sampleRate = sampleRate;
+            this.wavBytes += wavBytes;
+            this.flacBytes += flacBytes;
+            this.encodeNanos += encodeNanos;
+        }
+
+        public synchronized long getFiles() {
+            return files;
+        }
+
+        public synchronized long getWavBytes() {
+            return wavBytes;
+        }
+
+        public synchronized long getFlacBytes() {
+            return flacBytes;
+        }
+
+        /**
+         * FLAC size relative to the equivalent WAV size.
+         */
+        public synchronized double getRatio() {
+            return wavBytes > 0 ? (double) flacBytes / wavBytes : 0;
+        }
+
+        /**
+         * Seconds of audio encoded per second of encoding time.
+         */
+        public synchronized double getSpeed() {
+            return encodeNanos > 0 && sampleRate > 0 ? (double) samples / sampleRate / (encodeNanos / 1e9) : 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "FLAC: %d file(s), %.1f MB -> %.1f MB (%.0f%%), %.0fx real time",
+                    files, wavBytes / 1048576.0, flacBytes / 1048576.0, getRatio() * 100, getSpeed());
+        }
+    }
+
+    private final Stats stats = new Stats();
+    private final BitWriter frame = new BitWriter();
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Encodes {@code samples} like a WAV of {@code spec} would store them.
+     *
+     * @throws IllegalArgumentException if {@code spec} is floating point, which FLAC cannot store
+     */
+    public synchronized void write(File file, WavSpec spec, float[] samples) throws IOException {
+        if (spec.floatingPoint) throw new IllegalArgumentException("FLAC has no floating point samples");
+        long begin = System.nanoTime();
+        int bits = spec.bitsPerSample;
+        int[] pcm = quantize(samples, bits);
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            encode(channel, spec.sampleRate, bits, pcm);
+        }
+        long wavBytes = WavWriter.getHeaderSize(spec) + (long) samples.length * (spec.bitsPerSample / 8);
+        stats.add(samples.length, spec.sampleRate, wavBytes, file.length(), System.nanoTime() - begin);
+    }
+
+    /**
+     * Converts to integers with the same rounding and clipping as {@link WavWriter}.
+     */
+    public static int[] quantize(float[] samples, int bits) {
+        int[] pcm = new int[samples.length];
+        float max = bits == 24 ? 8388607 : 32767;
+        float min = bits == 24 ? -8388608 : -32768;
+        for (int i = 0; i < samples.length; i++) {
+            pcm[i] = (int) Math.max(Math.min(samples[i] * max, max), min);
+        }
+        return pcm;
+    }
+
+    public synchronized void encode(FileChannel channel, int sampleRate, int bits, int[] pcm) throws IOException {
+        if (bits != 16 && bits != 24) throw new IllegalArgumentException("Unsupported bit depth: " + bits);
+
+        long start = channel.position();
+        // Placeholder, the final STREAMINFO needs the frame sizes and checksum
+        writeFully(channel, ByteBuffer.allocate(4 + 4 + STREAMINFO_SIZE));
+
+        MessageDigest md5 = md5();
+        byte[] raw = new byte[BLOCK_SIZE * (bits / 8)];
+        int minFrame = Integer.MAX_VALUE;
+        int maxFrame = 0;
+        long frameNumber = 0;
+        for (int offset = 0; offset < pcm.length; offset += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, pcm.length - offset);
+            updateDigest(md5, raw, pcm, offset, count, bits);
+
+            frame.reset();
+            writeFrame(frame, pcm, offset, count, frameNumber++, sampleRate, bits);
+            writeFully(channel, ByteBuffer.wrap(frame.buffer, 0, frame.length));
+            minFrame = Math.min(minFrame, frame.length);
+            maxFrame = Math.max(maxFrame, frame.length);
+        }
+        long end = channel.position();
+
+        BitWriter header = new BitWriter();
+        header.write('f', 8);
+        header.write('L', 8);
+        header.write('a', 8);
+        header.write('C', 8);
+        header.write(1, 1); // last metadata block
+        header.write(0, 7); // STREAMINFO
+        header.write(STREAMINFO_SIZE, 24);
+        header.write(BLOCK_SIZE, 16);
+        header.write(BLOCK_SIZE, 16);
+        header.write(maxFrame > 0 ? minFrame : 0, 24);
+        header.write(maxFrame, 24);
+        header.write(sampleRate, 20);
+        header.write(0, 3); // channels - 1
+        header.write(bits - 1, 5);
+        header.write(0, 4); // upper bits of the 36-bit sample count
+        header.write(pcm.length, 32);
+        for (byte b : md5.digest()) header.write(b & 0xFF, 8);
+
+        channel.position(start);
+        writeFully(channel, ByteBuffer.wrap(header.buffer, 0, header.length));
+        channel.position(end);
+    }
+
+    private static void writeFrame(BitWriter out, int[] pcm, int offset, int count, long frameNumber, int sampleRate, int bits) {
+        out.write(0x3FFE, 14);
+        out.write(0, 1);
+        out.write(0, 1); // fixed block size
+
+        int blockSizeCode = blockSizeCode(count);
+        int sampleRateCode = sampleRateCode(sampleRate);
+        out.write(blockSizeCode, 4);
+        out.write(sampleRateCode, 4);
+        out.write(0, 4); // mono
+        out.write(bits == 24 ? 6 : 4, 3);
+        out.write(0, 1);
+        writeUtf8(out, frameNumber);
+        if (blockSizeCode == 6) out.write(count - 1, 8);
+        else if (blockSizeCode == 7) out.write(count - 1, 16);
+        out.write(crc8(out.buffer, 0, out.length), 8);
+
+        writeSubframe(out, pcm, offset, count, bits);
+        out.alignToByte();
+        out.write(crc16(out.buffer, 0, out.length), 16);
+    }
+
+    private static void writeSubframe(BitWriter out, int[] pcm, int offset, int count, int bits) {
+        boolean constant = true;
+        for (int i = 1; i < count && constant; i++) constant = pcm[offset + i] == pcm[offset];
+        if (constant) {
+            out.write(0, 8);
+            out.write(pcm[offset], bits);
+            return;
+        }
+
+        long[] residual = new long[count];
+        int[] partition = new int[1];
+
+        long bestBits = (long) count * bits;
+        int bestFixed = -1;
+        int[] bestCoefficients = null;
+        int bestShift = 0;
+
+        for (int order = 0; order <= Math.min(MAX_FIXED_ORDER, count - 1); order++) {
+            fixedResidual(pcm, offset, count, order, residual);
+            long cost = (long) order * bits + residualBits(residual, count, order, partition);
+            if (cost < bestBits) {
+                bestBits = cost;
+                bestFixed = order;
+            }
+        }
+
+        double[][] lpc = lpcCoefficients(pcm, offset, count, Math.min(MAX_LPC_ORDER, count - 1));
+        int[] shift = new int[1];
+        for (int order = 1; order < lpc.length; order++) {
+            if (lpc[order] == null) break;
+            int[] coefficients = quantizeCoefficients(lpc[order], shift);
+            if (coefficients == null) continue;
+            lpcResidual(pcm, offset, count, coefficients, shift[0], residual);
+            long cost = (long) order * bits + 4 + 5 + (long) order * LPC_PRECISION
+                    + residualBits(residual, count, order, partition);
+            if (cost < bestBits) {
+                bestBits = cost;
+                bestFixed = -1;
+                bestCoefficients = coefficients;
+                bestShift = shift[0];
+            }
+        }
+
+        if (bestCoefficients != null) {
+            int order = bestCoefficients.length;
+            out.write(0x40 | (order - 1) << 1, 8);
+            for (int i = 0; i < order; i++) out.write(pcm[offset + i], bits);
+            out.write(LPC_PRECISION - 1, 4);
+            out.write(bestShift, 5);
+            for (int coefficient : bestCoefficients) out.write(coefficient, LPC_PRECISION);
+            lpcResidual(pcm, offset, count, bestCoefficients, bestShift, residual);
+            writeResidual(out, residual, count, order);
+        } else if (bestFixed >= 0) {
+            out.write(0x10 | bestFixed << 1, 8);
+            for (int i = 0; i < bestFixed; i++) out.write(pcm[offset + i], bits);
+            fixedResidual(pcm, offset, count, bestFixed, residual);
+            writeResidual(out, residual, count, bestFixed);
+        } else {
+            out.write(0x02, 8);
+            for (int i = 0; i < count; i++) out.write(pcm[offset + i], bits);
+        }
+    }
+
+    private static void fixedResidual(int[] pcm, int offset, int count, int order, long[] residual) {
+        for (int i = order; i < count; i++) {
+            int p = offset + i;
+            long value;
+            switch (order) {
+                case 0:
+                    value = pcm[p];
+                    break;
+                case 1:
+                    value = (long) pcm[p] - pcm[p - 1];
+                    break;
+                case 2:
+                    value = (long) pcm[p] - 2L * pcm[p - 1] + pcm[p - 2];
+                    break;
+                case 3:
+                    value = (long) pcm[p] - 3L * pcm[p - 1] + 3L * pcm[p - 2] - pcm[p - 3];
+                    break;
+                default:
+                    value = (long) pcm[p] - 4L * pcm[p - 1] + 6L * pcm[p - 2] - 4L * pcm[p - 3] + pcm[p - 4];
+                    break;
+            }
+            residual[i] = value;
+        }
+    }
+
+    private static void lpcResidual(int[] pcm, int offset, int count, int[] coefficients, int shift, long[] residual) {
+        int order = coefficients.length;
+        for (int i = order; i < count; i++) {
+            int p = offset + i;
+            long sum = 0;
+            for (int j = 0; j < order; j++) sum += (long) coefficients[j] * pcm[p - 1 - j];
+            residual[i] = pcm[p] - (sum >> shift);
+        }
+    }
+
+    /**
+     * Predictor coefficients of every order up to {@code maxOrder} by Levinson-Durbin recursion
+     * over the autocorrelation of the Welch-windowed block. Index 0 is unused; orders that would
+     * be numerically unstable are null.
+     */
+    private static double[][] lpcCoefficients(int[] pcm, int offset, int count, int maxOrder) {
+        double[] windowed = new double[count];
+        double half = (count - 1) / 2.0;
+        for (int i = 0; i < count; i++) {
+            double x = (i - half) / (half + 1);
+            windowed[i] = pcm[offset + i] * (1 - x * x);
+        }
+
+        double[] autocorrelation = new double[maxOrder + 1];
+        for (int lag = 0; lag <= maxOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < count; i++) sum += windowed[i] * windowed[i - lag];
+            autocorrelation[lag] = sum;
+        }
+
+        double[][] result = new double[maxOrder + 1][];
+        if (autocorrelation[0] <= 0) return result;
+
+        double error = autocorrelation[0];
+        double[] a = new double[0];
+        for (int m = 1; m <= maxOrder; m++) {
+            double acc = autocorrelation[m];
+            for (int k = 1; k < m; k++) acc -= a[k - 1] * autocorrelation[m - k];
+            double reflection = acc / error;
+
+            double[] next = new double[m];
+            next[m - 1] = reflection;
+            for (int k = 1; k < m; k++) next[k - 1] = a[k - 1] - reflection * a[m - k - 1];
+            a = next;
+
+            error *= 1 - reflection * reflection;
+            if (error <= 0 || Double.isNaN(error)) break;
+            result[m] = a;
+        }
+        return result;
+    }
+
+    /**
+     * Quantizes to {@link #LPC_PRECISION}-bit integers with a common shift, carrying the rounding
+     * error over to the next coefficient. Returns null if no usable shift exists.
+     */
+    private static int[] quantizeCoefficients(double[] lpc, int[] shiftOut) {
+        double max = 0;
+        for (double c : lpc) max = Math.max(max, Math.abs(c));
+        if (max <= 0) return null;
+
+        int shift = LPC_PRECISION - 1 - (Math.getExponent(max) + 1);
+        if (shift < 0) return null;
+        shift = Math.min(shift, 15);
+
+        int limit = (1 << (LPC_PRECISION - 1)) - 1;
+        int[] quantized = new int[lpc.length];
+        double error = 0;
+        for (int i = 0; i < lpc.length; i++) {
+            error += lpc[i] * (1 << shift);
+            long q = Math.round(error);
+            q = Math.max(-limit - 1, Math.min(limit, q));
+            quantized[i] = (int) q;
+            error -= q;
+        }
+        shiftOut[0] = shift;
+        return quantized;
+    }
+
+    /**
+     * Estimated size of the Rice-coded residual with the best partition order, which is stored in
+     * {@code partitionOut[0]}. Partition sums are computed once at the finest order and merged
+     * pairwise for the coarser ones.
+     */
+    private static long residualBits(long[] residual, int count, int predictorOrder, int[] partitionOut) {
+        int maxOrder = maxPartitionOrder(count, predictorOrder);
+        long[] sums = partitionSums(residual, count, predictorOrder, maxOrder);
+
+        long best = Long.MAX_VALUE;
+        for (int order = maxOrder; order >= 0; order--) {
+            int size = count >> order;
+            long bits = 2 + 4;
+            for (int p = 0; p < 1 << order; p++) {
+                int n = p == 0 ? size - predictorOrder : size;
+                bits += 4 + riceBits(sums[p], n, riceParameter(sums[p], n));
+            }
+            if (bits <= best) {
+                best = bits;
+                partitionOut[0] = order;
+            }
+            for (int p = 0; p < 1 << order >> 1; p++) sums[p] = sums[2 * p] + sums[2 * p + 1];
+        }
+        return best;
+    }
+
+    private static void writeResidual(BitWriter out, long[] residual, int count, int predictorOrder) {
+        int[] partition = new int[1];
+        residualBits(residual, count, predictorOrder, partition);
+        int order = partition[0];
+        long[] sums = partitionSums(residual, count, predictorOrder, order);
+
+        out.write(0, 2); // Rice, 4-bit parameters
+        out.write(order, 4);
+        int size = count >> order;
+        for (int p = 0; p < 1 << order; p++) {
+            int from = p == 0 ? predictorOrder : p * size;
+            int to = (p + 1) * size;
+            int parameter = riceParameter(sums[p], to - from);
+            out.write(parameter, 4);
+            for (int i = from; i < to; i++) {
+                long folded = fold(residual[i]);
+                out.writeUnary(folded >>> parameter);
+                if (parameter > 0) out.write(folded & ((1L << parameter) - 1), parameter);
+            }
+        }
+    }
+
+    private static int maxPartitionOrder(int count, int predictorOrder) {
+        int order = 0;
+        while (order < MAX_PARTITION_ORDER && count % (2 << order) == 0 && (count >> (order + 1)) > predictorOrder) {
+            order++;
+        }
+        return order;
+    }
+
+    private static long[] partitionSums(long[] residual, int count, int predictorOrder, int order) {
+        long[] sums = new long[1 << order];
+        int size = count >> order;
+        for (int p = 0; p < sums.length; p++) {
+            long sum = 0;
+            for (int i = p == 0 ? predictorOrder : p * size; i < (p + 1) * size; i++) sum += fold(residual[i]);
+            sums[p] = sum;
+        }
+        return sums;
+    }
+
+    private static int riceParameter(long sum, int n) {
+        if (n <= 0) return 0;
+
+        long mean = sum / n;
+        int estimate = mean > 0 ? 63 - Long.numberOfLeadingZeros(mean) : 0;
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int k = Math.max(0, estimate - 1); k <= Math.min(MAX_RICE_PARAMETER, estimate + 1); k++) {
+            long bits = riceBits(sum, n, k);
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Approximate size of {@code n} values summing to {@code sum} with Rice parameter {@code k}.
+     */
+    private static long riceBits(long sum, int n, int k) {
+        return (long) n * (k + 1) + (sum >>> k);
+    }
+
+    private static long fold(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static int blockSizeCode(int count) {
+        if (count == 192) return 1;
+        for (int code = 2; code <= 5; code++) {
+            if (count == 576 << (code - 2)) return code;
+        }
+        for (int code = 8; code <= 15; code++) {
+            if (count == 256 << (code - 8)) return code;
+        }
+        return count <= 256 ? 6 : 7;
+    }
+
+    private static int sampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 88200:
+                return 1;
+            case 176400:
+                return 2;
+            case 192000:
+                return 3;
+            case 8000:
+                return 4;
+            case 16000:
+                return 5;
+            case 22050:
+                return 6;
+            case 24000:
+                return 7;
+            case 32000:
+                return 8;
+            case 44100:
+                return 9;
+            case 48000:
+                return 10;
+            case 96000:
+                return 11;
+            default:
+                return 0; // from STREAMINFO
+        }
+    }
+
+    private static void writeUtf8(BitWriter out, long value) {
+        if (value < 0x80) {
+            out.write(value, 8);
+            return;
+        }
+        int continuation = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3
+                : value < 0x4000000 ? 4 : value < 0x80000000L ? 5 : 6;
+        int lead = (0xFF00 >> (continuation + 1)) & 0xFF;
+        out.write(lead | (value >>> (6 * continuation)), 8);
+        for (int i = continuation - 1; i >= 0; i--) {
+            out.write(0x80 | (value >>> (6 * i) & 0x3F), 8);
+        }
+    }
+
+    private static int crc8(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? (crc << 1 ^ 0x07) & 0xFF : crc << 1 & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1 ^ 0x8005) & 0xFFFF : crc << 1 & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    private static void updateDigest(MessageDigest md5, byte[] raw, int[] pcm, int offset, int count, int bits) {
+        int bytes = bits / 8;
+        int position = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int value = pcm[i];
+            for (int b = 0; b < bytes; b++) raw[position++] = (byte) (value >> (8 * b));
+        }
+        md5.update(raw, 0, position);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * MSB-first bit packer into a growable byte array.
+     */
+    private static class BitWriter {
+        byte[] buffer = new byte[BLOCK_SIZE * 4];
+        int length;
+        private long accumulator;
+        private int pending;
+
+        void reset() {
+            length = 0;
+            accumulator = 0;
+            pending = 0;
+        }
+
+        /**
+         * Writes the low {@code bits} bits of {@code value}, at most 32 at a time.
+         */
+        void write(long value, int bits) {
+            accumulator = accumulator << bits | (value & ((1L << bits) - 1));
+            pending += bits;
+            while (pending >= 8) {
+                pending -= 8;
+                put((byte) (accumulator >>> pending));
+            }
+        }
+
+        void writeUnary(long zeros) {
+            while (zeros >= 32) {
+                write(0, 32);
+                zeros -= 32;
+            }
+            write(1, (int) zeros + 1);
+        }
+
+        void alignToByte() {
+            if (pending > 0) write(0, 8 - pending);
+        }
+
+        private void put(byte b) {
+            if (length == buffer.length) buffer = Arrays.copyOf(buffer, length * 2);
+            buffer[length++] = b;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Persistent list of history clips with their text, language, duration, size, creation time and
+ * position, so the list can be shown without listing the directory or opening the audio files.
+ * <p>
+ * Backed by an append-only log of one tab-separated record per change, replayed on {@link #load()}
+ * and rewritten once stale records outnumber live entries. A torn last line from a crash is
+ * skipped.
+ * <p>
+ * A clip is announced with {@link #reserve} before its file is written, so a clip whose process
+ * died before it was added is found on the next {@link #load()} without listing the directory.
+ */
+public class HistoryIndex {
+    private static final String TAG = "HistoryIndex";
+
+    public static final class Entry {
+        public final long id;
+        public final String path;
+        public final String text;
+        public final Lang lang;
+        public final long samples;
+        public final int sampleRate;
+        public final long size;
+        public final long created;
+        final long order;
+
+        Entry(long id, String path, String text, Lang lang, long samples, int sampleRate, long size, long created, long order) {
+            this.id = id;
+            this.path = path;
+            this.text = text;
+            this.lang = lang;
+            this.samples = samples;
+            this.sampleRate = sampleRate;
+            this.size = size;
+            this.created = created;
+            this.order = order;
+        }
+
+        public long getDurationMillis() {
+            return sampleRate > 0 ? samples * 1000 / sampleRate : 0;
+        }
+
+        Entry withPath(String path, long size) {
+            return new Entry(id, path, text, lang, samples, sampleRate, size, created, order);
+        }
+
+        Entry withOrder(long order) {
+            return new Entry(id, path, text, lang, samples, sampleRate, size, created, order);
+        }
+    }
+
+    private static final class Intent {
+        final String text;
+        final Lang lang;
+
+        Intent(String text, Lang lang) {
+            this.text = text;
+            this.lang = lang;
+        }
+    }
+
+    private final File file;
+    private final Map<Long, Entry> byId = new HashMap<>();
+    private final TreeMap<Long, Entry> byOrder = new TreeMap<>();
+    // Clips announced but not added yet, by path
+    private final Map<String, Intent> intents = new LinkedHashMap<>();
+    // The ones announced by this process, which may still be writing them
+    private final Set<String> reserved = new HashSet<>();
+    private long nextId = 1;
+    private int records;
+    private boolean loaded;
+
+    public HistoryIndex(File file) {
+        this.file = file;
+    }
+
+    public synchronized boolean exists() {
+        return file.isFile();
+    }
+
+    /**
+     * Replays the log and recovers announced clips. Entries whose file is gone are not checked
+     * here; callers drop them when they fail to open.
+     */
+    public synchronized void load() throws IOException {
+        byId.clear();
+        byOrder.clear();
+        intents.clear();
+        nextId = 1;
+        records = 0;
+
+        if (file.isFile()) {
+            dropTornTail();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        replay(line.split("\t", -1));
+                        records++;
+                    } catch (RuntimeException e) {
+                        CoreLog.w(TAG, "Skipping bad record: " + line);
+                    }
+                }
+            }
+        }
+        loaded = true;
+        recover();
+
+        if (!hasDistinctOrders() || records > 2 * byId.size() + 64) compact();
+    }
+
+    /**
+     * Cuts off a record that was only partly written, so the next append starts on a new line.
+     */
+    private void dropTornTail() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            if (end < raf.length()) {
+                CoreLog.w(TAG, "Dropping " + (raf.length() - end) + " bytes of a torn record");
+                raf.setLength(end);
+            }
+        }
+    }
+
+    /**
+     * Adds the announced clips whose file was completed before their process died, and forgets
+     * the others. Clips announced by this process are still being written and are left alone.
+     */
+    private void recover() throws IOException {
+        for (Map.Entry<String, Intent> intent : new ArrayList<>(intents.entrySet())) {
+            String path = intent.getKey();
+            if (reserved.contains(path)) continue;
+            File audio = new File(path);
+            if (audio.isFile() && findByPath(path) == null && probe(audio)[0] > 0) {
+                CoreLog.i(TAG, "Recovering " + audio.getName());
+                add(audio, intent.getValue().text, intent.getValue().lang, audio.lastModified());
+            } else {
+                CoreLog.w(TAG, "Dropping unfinished " + audio.getName());
+                if (findByPath(path) == null) audio.delete();
+                release(path);
+            }
+        }
+    }
+
+    /**
+     * Checks that no two entries share a position, which a swap cut short by a crash can cause,
+     * and renumbers them in their current order if they do.
+     */
+    private boolean hasDistinctOrders() {
+        if (byOrder.size() == byId.size()) return true;
+
+        List<Entry> entries = new ArrayList<>(byId.values());
+        entries.sort((a, b) -> a.order != b.order ? Long.compare(a.order, b.order) : Long.compare(a.id, b.id));
+        byId.clear();
+        byOrder.clear();
+        for (int i = 0; i < entries.size(); i++) put(entries.get(i).withOrder(i));
+        return false;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * Adds a clip at the top of the list.
+     */
+    public synchronized Entry add(String path, String text, Lang lang, long samples, int sampleRate, long size) throws IOException {
+        return add(path, text, lang, samples, sampleRate, size, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an existing clip at the top of the list, reading its header for the duration.
+     */
+    public synchronized Entry add(File audio, String text, Lang lang) throws IOException {
+        return add(audio, text, lang, System.currentTimeMillis());
+    }
+
+    private Entry add(File audio, String text, Lang lang, long created) throws IOException {
+        long[] format = probe(audio);
+        return add(audio.getAbsolutePath(), text, lang, format[0], (int) format[1], audio.length(), created);
+    }
+
+    /**
+     * Announces a clip that is about to be written to {@code path}, before any of it is. Adding
+     * the clip completes the announcement; {@link #release} withdraws it.
+     */
+    public synchronized void reserve(String path, String text, Lang lang) throws IOException {
+        append("W", escape(path), lang != null ? lang.name() : "-", escape(text));
+        intents.put(path, new Intent(text, lang));
+        reserved.add(path);
+    }
+
+    /**
+     * Withdraws the announcement of a clip that was not written after all.
+     */
+    public synchronized void release(String path) throws IOException {
+        reserved.remove(path);
+        if (intents.remove(path) != null) append("R", escape(path));
+    }
+
+    private Entry add(String path, String text, Lang lang, long samples, int sampleRate, long size, long created) throws IOException {
+        long order = byOrder.isEmpty() ? 0 : byOrder.firstKey() - 1;
+        Entry entry = new Entry(nextId, path, text, lang, samples, sampleRate, size, created, order);
+        append("A", entry.id, entry.order, entry.created, lang != null ? lang.name() : "-", samples, sampleRate, size,
+                escape(path), escape(text));
+        put(entry);
+        nextId = entry.id + 1;
+        intents.remove(path);
+        reserved.remove(path);
+        return entry;
+    }
+
+    public synchronized void updatePath(long id, String path, long size) throws IOException {
+        Entry entry = byId.get(id);
+        if (entry == null) return;
+        append("P", id, size, escape(path));
+        put(entry.withPath(path, size));
+    }
+
+    /**
+     * Exchanges the positions of two entries, as a drag past a neighbour does.
+     */
+    public synchronized void swap(long firstId, long secondId) throws IOException {
+        Entry first = byId.get(firstId);
+        Entry second = byId.get(secondId);
+        if (first == null || second == null) return;
+        append("O", firstId, second.order);
+        append("O", secondId, first.order);
+        put(first.withOrder(second.order));
+        put(second.withOrder(first.order));
+    }
+
+    public synchronized void remove(long id) throws IOException {
+        Entry entry = byId.get(id);
+        if (entry == null) return;
+        append("D", id);
+        byId.remove(id);
+        byOrder.remove(entry.order);
+    }
+
+    public synchronized Entry findByPath(String path) {
+        for (Entry entry : byId.values()) {
+            if (entry.path.equals(path)) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Up to {@code limit} entries in list order, starting at {@code offset}.
+     */
+    public synchronized List<Entry> page(int offset, int limit) {
+        List<Entry> result = new ArrayList<>(Math.min(limit, byOrder.size()));
+        Iterator<Entry> it = byOrder.values().iterator();
+        for (int i = 0; i < offset && it.hasNext(); i++) it.next();
+        while (result.size() < limit && it.hasNext()) result.add(it.next());
+        return result;
+    }
+
+    /**
+     * Adds clips that predate the index, reading only their headers for the duration. The text is
+     * recovered from the file name and the language is unknown. The newest file ends up on top.
+     */
+    public synchronized void importFiles(List<File> files) throws IOException {
+        List<File> sorted = new ArrayList<>(files);
+        sorted.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File audio : sorted) {
+            String name = audio.getName();
+            int dot = name.lastIndexOf('.');
+            add(audio, (dot > 0 ? name.substring(0, dot) : name).replace('_', ' '), null, audio.lastModified());
+        }
+    }
+
+    private void put(Entry entry) {
+        Entry old = byId.put(entry.id, entry);
+        // During a swap the old position may already belong to the other entry
+        if (old != null && byOrder.get(old.order) == old) byOrder.remove(old.order);
+        byOrder.put(entry.order, entry);
+    }
+
+    private void replay(String[] f) {
+        switch (f[0]) {
+            case "A": {
+                Entry entry = new Entry(Long.parseLong(f[1]), unescape(f[8]), unescape(f[9]), f[4].equals("-") ? null : Lang.valueOf(f[4]),
+                        Long.parseLong(f[5]), Integer.parseInt(f[6]), Long.parseLong(f[7]), Long.parseLong(f[3]), Long.parseLong(f[2]));
+                put(entry);
+                nextId = Math.max(nextId, entry.id + 1);
+                intents.remove(entry.path);
+                break;
+            }
+            case "P": {
+                Entry entry = byId.get(Long.parseLong(f[1]));
+                if (entry != null) put(entry.withPath(unescape(f[3]), Long.parseLong(f[2])));
+                break;
+            }
+            case "O": {
+                Entry entry = byId.get(Long.parseLong(f[1]));
+                if (entry != null) put(entry.withOrder(Long.parseLong(f[2])));
+                break;
+            }
+            case "W":
+                intents.put(unescape(f[1]), new Intent(unescape(f[3]), f[2].equals("-") ? null : Lang.valueOf(f[2])));
+                break;
+            case "R":
+                intents.remove(unescape(f[1]));
+                break;
+            case "D": {
+                Entry entry = byId.remove(Long.parseLong(f[1]));
+                if (entry != null && byOrder.get(entry.order) == entry) byOrder.remove(entry.order);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown record " + f[0]);
+        }
+    }
+
+    /**
+     * Rewrites the log with one record per live entry and open announcement.
+     */
+    private void compact() throws IOException {
+        File partial = new File(file.getParentFile(), file.getName() + ".part");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8)) {
+            for (Entry e : byOrder.values()) {
+                writer.write(line("A", e.id, e.order, e.created, e.lang != null ? e.lang.name() : "-", e.samples, e.sampleRate, e.size,
+                        escape(e.path), escape(e.text)));
+            }
+            for (Map.Entry<String, Intent> intent : intents.entrySet()) {
+                Lang lang = intent.getValue().lang;
+                writer.write(line("W", escape(intent.getKey()), lang != null ? lang.name() : "-", escape(intent.getValue().text)));
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Failed to move " + partial.getName() + " into place");
+        }
+        CoreLog.i(TAG, "Compacted " + records + " records into " + (byId.size() + intents.size()));
+        records = byId.size() + intents.size();
+    }
+
+    private void append(Object... fields) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            writer.write(line(fields));
+        }
+        records++;
+    }
+
+    private static String line(Object... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) sb.append('\t');
+            sb.append(fields[i]);
+        }
+        return sb.append('\n').toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sample count and rate from a WAV or FLAC header, or zeros if the format is not recognized.
+     */
+    private static long[] probe(File audio) {
+        try (RandomAccessFile raf = new RandomAccessFile(audio, "r")) {
+            byte[] head = new byte[Math.min(4096, (int) Math.min(raf.length(), Integer.MAX_VALUE))];
+            raf.readFully(head);
+            ByteBuffer buffer = ByteBuffer.wrap(head);
+
+            if (head.length >= 26 && head[0] == 'f' && head[1] == 'L' && head[2] == 'a' && head[3] == 'C') {
+                // STREAMINFO: 20-bit rate, 3-bit channels, 5-bit bits per sample, 36-bit total samples
+                long bits = buffer.getLong(18);
+                return new long[]{bits & 0xFFFFFFFFFL, bits >>> 44};
+            }
+            if (head.length >= 12 && head[0] == 'R' && head[8] == 'W') {
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int pos = 12;
+                int rate = 0, blockAlign = 0;
+                while (pos + 8 <= head.length) {
+                    int id = buffer.getInt(pos);
+                    long size = buffer.getInt(pos + 4) & 0xFFFFFFFFL;
+                    if (id == 0x20746d66 && pos + 22 <= head.length) { // "fmt "
+                        rate = buffer.getInt(pos + 12);
+                        blockAlign = buffer.getShort(pos + 20) & 0xFFFF;
+                    } else if (id == 0x61746164) { // "data"
+                        long data = Math.min(size, raf.length() - pos - 8);
+                        return new long[]{blockAlign > 0 ? data / blockAlign : 0, rate};
+                    }
+                    pos += 8 + size + (size & 1);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            CoreLog.w(TAG, "Failed to read header of " + audio.getName() + ": " + e.getMessage());
+        }
+        return new long[]{0, 0};
+    }
+}
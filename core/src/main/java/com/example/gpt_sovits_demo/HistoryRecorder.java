@@ -0,0 +1,214 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Saves fresh results to the history: writes the file, adds it to the result cache, the decoded
+ * audio cache and the index, and replaces it with a FLAC copy if asked to. It belongs to the
+ * process rather than to a screen, so a result that finishes while the activity is recreated is
+ * still saved, and it holds no reference to the screen that asked for it.
+ * <p>
+ * Files are named and written on one I/O thread, so two results with the same text cannot claim
+ * the same file. Every change to the index runs on the history thread, in order.
+ */
+public class HistoryRecorder {
+    private static final String TAG = "HistoryRecorder";
+
+    public interface Listener {
+        /** Called on the history thread after the index changed. */
+        void onHistoryChanged();
+
+        void onError(String message);
+    }
+
+    private final HistoryStore store;
+    private final HistoryIndex index;
+    private final WaveformCache waveforms;
+    private final ResultCache results;
+    private final PcmCache pcmCache;
+    private final Executor ioExecutor;
+    private final Executor historyExecutor;
+    private final Executor mainExecutor;
+    private final WavWriter wavWriter = new WavWriter();
+    private final FlacEncoder flacEncoder = new FlacEncoder();
+    private volatile Listener listener;
+
+    /**
+     * @param mainExecutor runs after the visible list has taken a change, e.g. the main thread
+     */
+    public HistoryRecorder(HistoryStore store, HistoryIndex index, WaveformCache waveforms, ResultCache results, PcmCache pcmCache,
+                           Executor ioExecutor, Executor historyExecutor, Executor mainExecutor) {
+        this.store = store;
+        this.index = index;
+        this.waveforms = waveforms;
+        this.results = results;
+        this.pcmCache = pcmCache;
+        this.ioExecutor = ioExecutor;
+        this.historyExecutor = historyExecutor;
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * Refreshes the history of the visible screen. Replaces the previous listener.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Removes {@code listener} unless a newer screen has already replaced it.
+     */
+    public void clearListener(Listener listener) {
+        if (this.listener == listener) this.listener = null;
+    }
+
+    public FlacEncoder.Stats getFlacStats() {
+        return flacEncoder.getStats();
+    }
+
+    /**
+     * Writes {@code clip} to a new history file named after {@code text} and adds it to the index.
+     * Results without a {@code cacheKey} are not added to the result cache. The returned future
+     * completes with the file once it is written, or with null if it could not be; the index and
+     * the FLAC copy follow later.
+     */
+    public CompletableFuture<File> save(AudioClip clip, String text, Lang lang, WavSpec spec, String cacheKey, boolean flac,
+                                        Metrics.Trace trace) {
+        CompletableFuture<File> saved = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            File wavFile = store.newFile(text);
+            try {
+                // Announced first, so the index finds the file even if the process dies before adding it
+                index.reserve(wavFile.getAbsolutePath(), text, lang);
+                long begin = trace.begin();
+                wavWriter.write(wavFile, spec, clip.samples);
+                trace.end(Metrics.Stage.WAV_WRITE, begin);
+                if (cacheKey != null) results.put(cacheKey, wavFile);
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Failed to save " + wavFile.getName() + ": " + e.getMessage(), e);
+                wavFile.delete();
+                release(wavFile);
+                notifyError("Failed to save " + wavFile.getName() + ": " + e.getMessage());
+                saved.complete(null);
+                return;
+            }
+            pcmCache.put(wavFile, clip);
+            saved.complete(wavFile);
+
+            long size = wavFile.length();
+            historyExecutor.execute(() -> {
+                try {
+                    HistoryIndex.Entry entry = index.add(wavFile.getAbsolutePath(), text, lang, clip.samples.length, spec.sampleRate, size);
+                    // From the samples at hand, so the new row never has to read its file back
+                    waveforms.put(entry.id, Waveform.of(clip.samples, spec.sampleRate));
+                } catch (IOException e) {
+                    CoreLog.e(TAG, "Failed to index " + wavFile.getName() + ": " + e.getMessage(), e);
+                }
+                notifyChanged();
+            });
+
+            // FLAC cannot hold float samples, so those stay WAV
+            if (flac && !spec.floatingPoint) compress(wavFile, spec, clip.samples, cacheKey);
+        });
+        return saved;
+    }
+
+    /**
+     * Puts the result cached as {@code cacheKey} back into the history after its entry was
+     * deleted. The new file is named and linked on the I/O thread, like a fresh result, and
+     * nothing happens if another request restored it first.
+     */
+    public void restore(String cacheKey, File cached, String text, Lang lang) {
+        ioExecutor.execute(() -> {
+            String historyPath = results.getHistoryPath(cacheKey);
+            if (historyPath != null && new File(historyPath).isFile()) return;
+
+            File file = store.newFile(text);
+            try {
+                index.reserve(file.getAbsolutePath(), text, lang);
+                try {
+                    Files.createLink(file.toPath(), cached.toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(cached.toPath(), file.toPath());
+                }
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Failed to restore " + file.getName() + ": " + e.getMessage(), e);
+                file.delete();
+                release(file);
+                notifyError("Failed to save " + file.getName() + ": " + e.getMessage());
+                return;
+            }
+            results.setHistoryPath(cacheKey, file.getAbsolutePath());
+
+            historyExecutor.execute(() -> {
+                try {
+                    index.add(file, text, lang);
+                } catch (IOException e) {
+                    CoreLog.e(TAG, "Failed to index " + file.getName() + ": " + e.getMessage(), e);
+                }
+                notifyChanged();
+            });
+        });
+    }
+
+    /**
+     * Replaces the history WAV of a result with a lossless FLAC copy. The WAV keeps serving
+     * playback and the result cache until the FLAC file is complete.
+     */
+    private void compress(File wavFile, WavSpec spec, float[] samples, String cacheKey) {
+        File flacFile = HistoryStore.withExtension(wavFile, ".flac");
+        File partial = new File(flacFile.getParentFile(), flacFile.getName() + ".part");
+        try {
+            flacEncoder.write(partial, spec, samples);
+            if (!partial.renameTo(flacFile)) throw new IOException("Failed to move " + partial.getName() + " into place");
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Failed to compress " + wavFile.getName() + ": " + e.getMessage(), e);
+            partial.delete();
+            return;
+        }
+        CoreLog.i(TAG, flacEncoder.getStats().toString());
+        pcmCache.put(flacFile, new AudioClip(samples, spec.sampleRate));
+
+        String wavPath = wavFile.getAbsolutePath();
+        if (cacheKey != null && wavPath.equals(results.getHistoryPath(cacheKey))) {
+            results.setHistoryPath(cacheKey, flacFile.getAbsolutePath());
+        }
+        historyExecutor.execute(() -> {
+            HistoryIndex.Entry entry = index.findByPath(wavPath);
+            try {
+                if (entry != null) index.updatePath(entry.id, flacFile.getAbsolutePath(), flacFile.length());
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Failed to repoint " + wavFile.getName() + ": " + e.getMessage(), e);
+                return;
+            }
+            notifyChanged();
+            // Deleted only after the list has been repointed, so it never shows a missing file
+            mainExecutor.execute(() -> {
+                if (!wavFile.delete()) CoreLog.w(TAG, "Failed to delete " + wavPath);
+                pcmCache.invalidate(wavFile);
+            });
+        });
+    }
+
+    private void release(File file) {
+        try {
+            index.release(file.getAbsolutePath());
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Failed to release " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void notifyChanged() {
+        Listener current = listener;
+        if (current != null) current.onHistoryChanged();
+    }
+
+    private void notifyError(String message) {
+        Listener current = listener;
+        if (current != null) current.onError(message);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The directory of synthesized clips shown as inference results: names new files after their
+ * text and lists the existing ones.
+ */
+public class HistoryStore {
+    private static final String TAG = "HistoryStore";
+
+    private final File dir;
+
+    public HistoryStore(File dir) {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            CoreLog.w(TAG, "Failed to create " + dir.getAbsolutePath());
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * A file named after {@code text} that does not exist yet.
+     */
+    public File newFile(String text) {
+        String baseName = text.trim().replaceAll("[^\\w.-]", "_");
+        if (baseName.isEmpty()) baseName = "output";
+
+        File file = new File(dir, baseName + ".wav");
+        int counter = 1;
+        while (file.exists()) {
+            file = new File(dir, baseName + "_" + counter++ + ".wav");
+        }
+        return file;
+    }
+
+    /**
+     * A file next to {@code file} with its extension replaced by {@code extension}, that does not
+     * exist yet.
+     */
+    public static File withExtension(File file, String extension) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+
+        File result = new File(file.getParentFile(), baseName + extension);
+        int counter = 1;
+        while (result.exists()) {
+            result = new File(file.getParentFile(), baseName + "_" + counter++ + extension);
+        }
+        return result;
+    }
+
+    public List<File> scan() {
+        return scan(dir);
+    }
+
+    /**
+     * Moves the clips of a version that kept them directly in {@code legacyDir} into this
+     * directory, and lists all clips. Only needed once, before the history is first indexed.
+     */
+    public List<File> adopt(File legacyDir) {
+        for (File file : scan(legacyDir)) {
+            File target = new File(dir, file.getName());
+            if (target.exists() || !file.renameTo(target)) {
+                CoreLog.w(TAG, "Failed to move " + file.getName() + " into " + dir.getName());
+            }
+        }
+        return scan();
+    }
+
+    private static List<File> scan(File dir) {
+        File[] files = dir.listFiles((parent, name) ->
+                (name.endsWith(".wav") || name.endsWith(".flac") || name.endsWith(".mp3")) && !name.equalsIgnoreCase("ref.wav"));
+
+        List<File> result = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) result.add(file);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs native model work on one dedicated thread per lane (one lane per model handle), so a
+ * handle is only ever used from a single thread. Each lane has a priority queue where interactive
+ * requests overtake batch ones. Identical pending requests are coalesced into one. A request with
+ * a key supersedes older requests of its group, and {@link #cancel} stops a whole group: pending
+ * ones are dropped, and the running one is asked through its {@link Ticket} to stop at the next
+ * segment boundary.
+ */
+public class InferenceScheduler<K> {
+    public enum Priority {
+        INTERACTIVE,
+        BATCH
+    }
+
+    public interface Job<T> {
+        T run(Ticket ticket) throws Exception;
+    }
+
+    public static class Ticket {
+        private volatile boolean cancelled;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class Task<T> implements Comparable<Task<?>> {
+        final Priority priority;
+        final long sequence;
+        final String key;
+        final String group;
+        final Job<T> job;
+        final Ticket ticket = new Ticket();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+
+        Task(Priority priority, long sequence, String key, String group, Job<T> job) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.key = key;
+            this.group = group;
+            this.job = job;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+
+        void run() {
+            try {
+                future.complete(job.run(ticket));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private class Lane implements Runnable {
+        final PriorityBlockingQueue<Task<?>> queue = new PriorityBlockingQueue<>();
+        final Thread thread;
+        volatile Task<?> current;
+
+        Lane(String name) {
+            thread = new Thread(this, "inference-" + name);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Task<?> task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                synchronized (InferenceScheduler.this) {
+                    if (task.key != null) pending.remove(task.key, task);
+                    current = task;
+                    // Cancelled after take() but before it became current, when it was in neither place
+                    Long cancelled = task.group != null ? cancelledUpTo.get(task.group) : null;
+                    if (cancelled != null && task.sequence <= cancelled) task.ticket.cancel();
+                }
+                recordWait(System.nanoTime() - task.enqueuedNanos);
+
+                if (task.ticket.isCancelled()) {
+                    task.future.cancel(false);
+                } else {
+                    task.run();
+                }
+                current = null;
+            }
+        }
+    }
+
+    private final Map<K, Lane> lanes = new HashMap<>();
+    private final Map<String, Task<?>> pending = new HashMap<>();
+    private final Map<String, Long> cancelledUpTo = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong lastWaitNanos = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private boolean shutdown;
+
+    /**
+     * Queues {@code job} on the lane of {@code lane}.
+     *
+     * @param key   identifies identical work; a pending request with the same key is returned
+     *              instead of queueing another one. May be null.
+     * @param group a request with a key supersedes the other requests of its group; requests
+     *              without a key only join it, so {@link #cancel} can stop them. May be null.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> submit(K lane, Priority priority, String key, String group, Job<T> job) {
+        if (shutdown) throw new IllegalStateException("Scheduler is shut down");
+
+        if (key != null) {
+            Task<?> existing = pending.get(key);
+            if (existing != null) return (CompletableFuture<T>) existing.future;
+        }
+        if (group != null && key != null) cancelGroup(group, key);
+
+        Task<T> task = new Task<>(priority, sequence.incrementAndGet(), key, group, job);
+        if (key != null) pending.put(key, task);
+        Lane target = lanes.get(lane);
+        if (target == null) {
+            target = new Lane(String.valueOf(lane));
+            lanes.put(lane, target);
+        }
+        target.queue.add(task);
+        return task.future;
+    }
+
+    /**
+     * Cancels every pending and running request of {@code group}.
+     */
+    public synchronized void cancel(String group) {
+        cancelGroup(group, null);
+    }
+
+    /**
+     * Number of requests waiting to start, over all lanes.
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes.values()) depth += lane.queue.size();
+        return depth;
+    }
+
+    /**
+     * Number of requests waiting or running, over all lanes.
+     */
+    public synchronized int getLoad() {
+        int load = 0;
+        for (Lane lane : lanes.values()) load += lane.queue.size() + (lane.current != null ? 1 : 0);
+        return load;
+    }
+
+    public long getLastWaitMillis() {
+        return lastWaitNanos.get() / 1_000_000;
+    }
+
+    public long getAverageWaitMillis() {
+        long count = started.get();
+        return count > 0 ? totalWaitNanos.get() / count / 1_000_000 : 0;
+    }
+
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (Lane lane : lanes.values()) {
+            List<Task<?>> remaining = new ArrayList<>();
+            lane.queue.drainTo(remaining);
+            for (Task<?> task : remaining) task.future.cancel(false);
+            Task<?> current = lane.current;
+            if (current != null) current.ticket.cancel();
+            lane.thread.interrupt();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Cancels the requests of {@code group} except those with key {@code except}, if it is not
+     * null. Runs with the scheduler locked.
+     */
+    private void cancelGroup(String group, String except) {
+        // Catches requests already taken off a queue that are not current yet when they start
+        cancelledUpTo.put(group, sequence.get());
+        for (Lane lane : lanes.values()) {
+            for (Task<?> task : lane.queue.toArray(new Task<?>[0])) {
+                if (group.equals(task.group) && !isExcepted(task, except) && lane.queue.remove(task)) {
+                    if (task.key != null) pending.remove(task.key, task);
+                    task.ticket.cancel();
+                    task.future.cancel(false);
+                }
+            }
+            Task<?> current = lane.current;
+            if (current != null && group.equals(current.group) && !isExcepted(current, except)) {
+                current.ticket.cancel();
+            }
+        }
+    }
+
+    private static boolean isExcepted(Task<?> task, String except) {
+        return except != null && except.equals(task.key);
+    }
+
+    private void recordWait(long waitNanos) {
+        lastWaitNanos.set(waitNanos);
+        totalWaitNanos.addAndGet(waitNanos);
+        started.incrementAndGet();
+    }
+}
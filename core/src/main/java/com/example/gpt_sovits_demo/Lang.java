@@ -0,0 +1,7 @@
+package com.example.gpt_sovits_demo;
+
+public enum Lang {
+    YUE,
+    ZH,
+    EN
+}
@@ -0,0 +1,287 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a synthetic request stream through the same scheduler, model pool, model manager and
+ * result cache the app uses, on top of any {@link TtsEngine}. Requests arrive as a Poisson
+ * process with a configurable language mix, share of interactive requests and number of distinct
+ * texts (which determines the cache hit rate). Run on a host with {@code ./gradlew :core:loadTest}.
+ */
+public class LoadGenerator {
+    private static final String TAG = "LoadGenerator";
+    private static final String REF_TEXT = "reference";
+
+    public static class Config {
+        public int requests = 200;
+        public double ratePerSecond = 5;
+        public int distinctTexts = 50;
+        public double interactiveShare = 0.5;
+        public Map<Lang, Double> langWeights = new EnumMap<>(Map.of(Lang.YUE, 0.5, Lang.ZH, 0.3, Lang.EN, 0.2));
+        public long poolBudgetBytes = 160L << 20;
+        public long cacheQuotaBytes = 50L << 20;
+        public long seed = 1;
+    }
+
+    public static class Report {
+        public int requests;
+        public int completed;
+        public int failed;
+        public int cancelled;
+        public long cacheHits;
+        public long elapsedNanos;
+        public final List<Double> queueMillis = new ArrayList<>();
+        public final List<Double> latencyMillis = new ArrayList<>();
+        public long loads;
+        public long frees;
+        public int peakModels;
+        public String stages;
+
+        public double getThroughput() {
+            return elapsedNanos > 0 ? completed / (elapsedNanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            Collections.sort(queueMillis);
+            Collections.sort(latencyMillis);
+            double minutes = elapsedNanos / 6e10;
+            return String.format(Locale.US,
+                    "requests %d: %d completed, %d failed, %d cancelled, %d cache hits in %.1f s (%.2f req/s)%n"
+                            + "queue wait ms   p50 %8.1f  p95 %8.1f  p99 %8.1f%n"
+                            + "latency ms      p50 %8.1f  p95 %8.1f  p99 %8.1f%n"
+                            + "model loads %d, frees %d (%.1f loads/min), peak %d resident%n%s",
+                    requests, completed, failed, cancelled, cacheHits, elapsedNanos / 1e9, getThroughput(),
+                    Metrics.percentile(queueMillis, 50), Metrics.percentile(queueMillis, 95), Metrics.percentile(queueMillis, 99),
+                    Metrics.percentile(latencyMillis, 50), Metrics.percentile(latencyMillis, 95), Metrics.percentile(latencyMillis, 99),
+                    loads, frees, minutes > 0 ? loads / minutes : 0, peakModels, stages);
+        }
+    }
+
+    private final Config config;
+    private final FakeTtsEngine engine;
+
+    public LoadGenerator(Config config, FakeTtsEngine engine) {
+        this.config = config;
+        this.engine = engine;
+    }
+
+    public Report run() throws IOException, InterruptedException {
+        File workDir = Files.createTempDirectory("loadtest").toFile();
+        InferenceScheduler<Lang> scheduler = new InferenceScheduler<>();
+        ModelPool pool = new ModelPool(config.poolBudgetBytes);
+        ResultCache cache = new ResultCache(new File(workDir, "results"), config.cacheQuotaBytes);
+        HistoryStore history = new HistoryStore(workDir);
+        WavWriter wavWriter = new WavWriter();
+        WavSpec spec = WavSpec.forBits(FakeTtsEngine.SAMPLE_RATE, 16, 1);
+        Metrics metrics = new Metrics(Math.max(1, config.requests));
+        ModelManager manager = new ModelManager(engine, pool, new StubSource(), new ModelManager.Listener() {
+            @Override
+            public void onStatus(String text, int percent) {
+            }
+
+            @Override
+            public void onStatusCleared() {
+            }
+
+            @Override
+            public void onLoaded(Lang lang) {
+            }
+
+            @Override
+            public void onError(String message) {
+                CoreLog.w(TAG, message);
+            }
+        });
+
+        Random random = new Random(config.seed);
+        Report report = new Report();
+        report.requests = config.requests;
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        List<CompletableFuture<?>> futures = new ArrayList<>(config.requests);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < config.requests; i++) {
+                // Exponential inter-arrival times make a Poisson arrival process
+                Thread.sleep((long) (-Math.log(1 - random.nextDouble()) / config.ratePerSecond * 1000));
+
+                Lang lang = pickLang(random);
+                String text = "Utterance number " + random.nextInt(Math.max(1, config.distinctTexts)) + ".";
+                boolean interactive = random.nextDouble() < config.interactiveShare;
+                long submitted = System.nanoTime();
+
+                CompletableFuture<Boolean> future = scheduler.submit(lang,
+                        interactive ? InferenceScheduler.Priority.INTERACTIVE : InferenceScheduler.Priority.BATCH,
+                        lang.name() + "\n" + text, interactive ? "interactive:" + lang.name() : null,
+                        ticket -> {
+                            double waited = (System.nanoTime() - submitted) / 1e6;
+                            synchronized (report) {
+                                report.queueMillis.add(waited);
+                            }
+                            Metrics.Trace trace = new Metrics.Trace(interactive ? "interactive" : "batch", lang.name());
+                            trace.chars = text.length();
+                            trace.sampleRate = FakeTtsEngine.SAMPLE_RATE;
+                            try (ModelHandle.Lease lease = manager.prepare(REF_TEXT, lang, ticket, trace)) {
+                                if (lease == null) return false;
+
+                                String key = ResultCache.key(lang.name(), lease.getHandle().getReference(), text);
+                                if (cache.get(key) != null) {
+                                    trace.cached = true;
+                                    return true;
+                                }
+                                long begin = trace.begin();
+                                float[] samples = engine.infer(lease.getPointer(), text, TtsEngine.langId(lang));
+                                trace.end(Metrics.Stage.INFERENCE, begin);
+                                if (samples == null) return false;
+
+                                trace.outputSamples = samples.length;
+                                File wavFile = history.newFile(text);
+                                begin = trace.begin();
+                                wavWriter.write(wavFile, spec, samples);
+                                trace.end(Metrics.Stage.WAV_WRITE, begin);
+                                cache.put(key, wavFile);
+                                return true;
+                            } finally {
+                                metrics.record(trace);
+                            }
+                        });
+                futures.add(future.whenComplete((success, err) -> {
+                    if (err == null) {
+                        (success ? completed : failed).incrementAndGet();
+                        synchronized (report) {
+                            report.latencyMillis.add((System.nanoTime() - submitted) / 1e6);
+                        }
+                    } else if (err instanceof CancellationException || err.getCause() instanceof CancellationException) {
+                        cancelled.incrementAndGet();
+                    } else {
+                        CoreLog.w(TAG, "Request failed: " + err);
+                        failed.incrementAndGet();
+                    }
+                }));
+            }
+
+            for (CompletableFuture<?> future : futures) {
+                try {
+                    future.join();
+                } catch (CancellationException | CompletionException ignored) {
+                    // Counted above
+                }
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+        } finally {
+            scheduler.shutdown();
+            pool.clear();
+            deleteAll(workDir);
+        }
+
+        report.completed = completed.get();
+        report.failed = failed.get();
+        report.cancelled = cancelled.get();
+        report.cacheHits = cache.getHits();
+        report.loads = engine.getLoads();
+        report.frees = engine.getFrees();
+        report.peakModels = engine.getPeakModels();
+        report.stages = metrics.summary();
+        return report;
+    }
+
+    private Lang pickLang(Random random) {
+        double total = 0;
+        for (double weight : config.langWeights.values()) total += weight;
+        double pick = random.nextDouble() * total;
+        for (Map.Entry<Lang, Double> entry : config.langWeights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) return entry.getKey();
+        }
+        return Lang.YUE;
+    }
+
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteAll(child);
+        }
+        file.delete();
+    }
+
+    /**
+     * Model files that need no staging; the fake engine does not read them.
+     */
+    private static class StubSource implements ModelManager.Source {
+        @Override
+        public Map<String, String> stage(Lang lang, ParallelCopier.ProgressListener listener) {
+            Map<String, String> files = new HashMap<>();
+            for (String key : ModelManager.MODEL_KEYS) files.put(key, "/nonexistent/" + key);
+            files.put(ModelManager.REFERENCE_KEY, "/nonexistent/ref.wav");
+            return files;
+        }
+
+        @Override
+        public String stageReference(Lang lang) {
+            return "/nonexistent/ref.wav";
+        }
+
+        @Override
+        public String getReferenceFingerprint(Lang lang) {
+            return "stub";
+        }
+    }
+
+    /**
+     * Arguments are {@code key=value} pairs, e.g. {@code requests=500 rate=10 budgetMb=128
+     * msPerChar=15 inferFail=0.01}.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split > 0) options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        Config config = new Config();
+        config.requests = Integer.parseInt(options.getOrDefault("requests", String.valueOf(config.requests)));
+        config.ratePerSecond = Double.parseDouble(options.getOrDefault("rate", String.valueOf(config.ratePerSecond)));
+        config.distinctTexts = Integer.parseInt(options.getOrDefault("texts", String.valueOf(config.distinctTexts)));
+        config.interactiveShare = Double.parseDouble(options.getOrDefault("interactive", String.valueOf(config.interactiveShare)));
+        config.poolBudgetBytes = Long.parseLong(options.getOrDefault("budgetMb", String.valueOf(config.poolBudgetBytes >> 20))) << 20;
+        config.cacheQuotaBytes = Long.parseLong(options.getOrDefault("cacheMb", String.valueOf(config.cacheQuotaBytes >> 20))) << 20;
+        config.seed = Long.parseLong(options.getOrDefault("seed", String.valueOf(config.seed)));
+        if (options.containsKey("langs")) {
+            // e.g. langs=yue:0.6,en:0.4
+            config.langWeights.clear();
+            for (String part : options.get("langs").split(",")) {
+                String[] pair = part.split(":");
+                Lang lang = BatchJob.parseLang(pair[0]);
+                if (lang != null) config.langWeights.put(lang, pair.length > 1 ? Double.parseDouble(pair[1]) : 1);
+            }
+        }
+
+        FakeTtsEngine engine = new FakeTtsEngine(config.seed);
+        engine.setLoadMillis(Long.parseLong(options.getOrDefault("loadMs", "2000")));
+        engine.setReferenceMillis(Long.parseLong(options.getOrDefault("refMs", "300")));
+        engine.setInferenceMillisPerChar(Double.parseDouble(options.getOrDefault("msPerChar", "20")));
+        engine.setModelBytes(Integer.parseInt(options.getOrDefault("modelMb", "64")) << 20);
+        engine.setFailureRates(Double.parseDouble(options.getOrDefault("loadFail", "0")),
+                Double.parseDouble(options.getOrDefault("refFail", "0")),
+                Double.parseDouble(options.getOrDefault("inferFail", "0")));
+
+        System.out.println(new LoadGenerator(config, engine).run());
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-stage latency records of the most recent requests, kept in a fixed-size ring buffer. Every
+ * request gets a {@link Trace} with monotonic stage timings and output statistics; the buffer
+ * provides percentile summaries and a JSON export.
+ */
+public class Metrics {
+    public enum Stage {
+        STAGING,
+        INIT_MODEL,
+        PROCESS_REFERENCE,
+        INFERENCE,
+        WAV_WRITE,
+        PLAYBACK_START
+    }
+
+    public static class Trace {
+        public final String kind;
+        public final String lang;
+        public final long createdMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final long[] stageNanos = new long[Stage.values().length];
+        private final AtomicInteger holds = new AtomicInteger(1);
+        public long stagedBytes;
+        public int chars;
+        public long outputSamples;
+        public int sampleRate;
+        public long rssBefore;
+        public long rssAfter;
+        public boolean cached;
+
+        public Trace(String kind, String lang) {
+            this.kind = kind;
+            this.lang = lang;
+            Arrays.fill(stageNanos, -1);
+        }
+
+        public long begin() {
+            return System.nanoTime();
+        }
+
+        public synchronized void end(Stage stage, long begin) {
+            long elapsed = System.nanoTime() - begin;
+            int index = stage.ordinal();
+            stageNanos[index] = stageNanos[index] < 0 ? elapsed : stageNanos[index] + elapsed;
+        }
+
+        /**
+         * Records the time from the creation of the trace until now, e.g. press to first audio.
+         */
+        public synchronized void mark(Stage stage) {
+            if (stageNanos[stage.ordinal()] < 0) stageNanos[stage.ordinal()] = System.nanoTime() - startNanos;
+        }
+
+        public synchronized long getStageNanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        /**
+         * Keeps the trace open for a stage that finishes on another thread, such as writing the
+         * result or starting playback. Each hold is matched by one {@link #release}.
+         */
+        public void hold() {
+            holds.incrementAndGet();
+        }
+
+        /**
+         * Returns whether this was the last hold, so the trace is complete and can be recorded.
+         * The creator holds the trace from the start.
+         */
+        public boolean release() {
+            return holds.decrementAndGet() == 0;
+        }
+
+        public double getOutputSeconds() {
+            return sampleRate > 0 ? (double) outputSamples / sampleRate : 0;
+        }
+
+        /**
+         * Inference time divided by the duration of the produced audio; below 1 is faster than
+         * real time.
+         */
+        public double getRealTimeFactor() {
+            long inference = getStageNanos(Stage.INFERENCE);
+            double output = getOutputSeconds();
+            return inference >= 0 && output > 0 ? inference / 1e9 / output : -1;
+        }
+
+        public double getCharsPerSecond() {
+            long inference = getStageNanos(Stage.INFERENCE);
+            return inference > 0 ? chars / (inference / 1e9) : -1;
+        }
+    }
+
+    private final Trace[] ring;
+    private int next;
+    private int count;
+
+    public Metrics(int capacity) {
+        ring = new Trace[capacity];
+    }
+
+    public synchronized void record(Trace trace) {
+        ring[next] = trace;
+        next = (next + 1) % ring.length;
+        count = Math.min(count + 1, ring.length);
+    }
+
+    /**
+     * Recorded traces, oldest first.
+     */
+    public synchronized List<Trace> snapshot() {
+        List<Trace> traces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            traces.add(ring[(next - count + i + ring.length) % ring.length]);
+        }
+        return traces;
+    }
+
+    public String summary() {
+        List<Trace> traces = snapshot();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-18s %5s %8s %8s %8s%n", "stage (ms)", "n", "p50", "p95", "p99"));
+        for (Stage stage : Stage.values()) {
+            List<Double> values = new ArrayList<>();
+            for (Trace trace : traces) {
+                long nanos = trace.getStageNanos(stage);
+                if (nanos >= 0) values.add(nanos / 1e6);
+            }
+            appendRow(builder, stage.name().toLowerCase(Locale.ROOT), values, "%8.1f");
+        }
+
+        List<Double> rtf = new ArrayList<>();
+        List<Double> charsPerSecond = new ArrayList<>();
+        List<Double> stagingMbps = new ArrayList<>();
+        for (Trace trace : traces) {
+            if (trace.getRealTimeFactor() >= 0) rtf.add(trace.getRealTimeFactor());
+            if (trace.getCharsPerSecond() >= 0) charsPerSecond.add(trace.getCharsPerSecond());
+            long staging = trace.getStageNanos(Stage.STAGING);
+            if (trace.stagedBytes > 0 && staging > 0) stagingMbps.add(trace.stagedBytes / 1048576.0 / (staging / 1e9));
+        }
+        appendRow(builder, "rtf", rtf, "%8.3f");
+        appendRow(builder, "chars/s", charsPerSecond, "%8.1f");
+        appendRow(builder, "staging MB/s", stagingMbps, "%8.1f");
+        return builder.toString();
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"traces\":[");
+        List<Trace> traces = snapshot();
+        for (int i = 0; i < traces.size(); i++) {
+            Trace trace = traces.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"kind\":").append(quote(trace.kind))
+                    .append(",\"lang\":").append(quote(trace.lang))
+                    .append(",\"created\":").append(trace.createdMillis)
+                    .append(",\"cached\":").append(trace.cached)
+                    .append(",\"stagesMs\":{");
+            boolean first = true;
+            for (Stage stage : Stage.values()) {
+                long nanos = trace.getStageNanos(stage);
+                if (nanos < 0) continue;
+                if (!first) json.append(',');
+                json.append(quote(stage.name().toLowerCase(Locale.ROOT))).append(':').append(format(nanos / 1e6));
+                first = false;
+            }
+            json.append("},\"stagedBytes\":").append(trace.stagedBytes)
+                    .append(",\"chars\":").append(trace.chars)
+                    .append(",\"outputSeconds\":").append(format(trace.getOutputSeconds()))
+                    .append(",\"realTimeFactor\":").append(format(trace.getRealTimeFactor()))
+                    .append(",\"charsPerSecond\":").append(format(trace.getCharsPerSecond()))
+                    .append(",\"rssBefore\":").append(trace.rssBefore)
+                    .append(",\"rssAfter\":").append(trace.rssAfter)
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    static double percentile(List<Double> sorted, double p) {
+        if (sorted.isEmpty()) return Double.NaN;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+
+    private static void appendRow(StringBuilder builder, String name, List<Double> values, String format) {
+        Collections.sort(values);
+        builder.append(String.format(Locale.US, "%-18s %5d", name, values.size()));
+        if (values.isEmpty()) {
+            builder.append(String.format(Locale.US, " %8s %8s %8s%n", "-", "-", "-"));
+            return;
+        }
+        builder.append(' ').append(String.format(Locale.US, format, percentile(values, 50)))
+                .append(' ').append(String.format(Locale.US, format, percentile(values, 95)))
+                .append(' ').append(String.format(Locale.US, format, percentile(values, 99)))
+                .append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') builder.append('\\').append(c);
+            else if (c < 0x20) builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+            else builder.append(c);
+        }
+        return builder.append('"').toString();
+    }
+}
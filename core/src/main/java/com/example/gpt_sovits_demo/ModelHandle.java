@@ -0,0 +1,134 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A native model handle with a lock-free lifecycle: {@code LOADING -> READY -> DRAINING -> FREED}.
+ * Users take a {@link Lease} for as long as they call into the handle. Draining stops new leases
+ * from being handed out, and the native handle is freed once the last lease is closed, so a free
+ * never races an inference that is still running on another thread.
+ */
+public class ModelHandle {
+    public static final int LOADING = 0;
+    public static final int READY = 1;
+    public static final int DRAINING = 2;
+    public static final int FREED = 3;
+
+    public interface Releaser {
+        void free(long pointer);
+    }
+
+    public class Lease implements AutoCloseable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        public ModelHandle getHandle() {
+            return ModelHandle.this;
+        }
+
+        public long getPointer() {
+            return pointer;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) release();
+        }
+    }
+
+    private final long pointer;
+    private final Releaser releaser;
+    private final AtomicInteger state = new AtomicInteger(LOADING);
+    private final AtomicInteger leases = new AtomicInteger();
+    private volatile String reference;
+    private volatile boolean warmedUp;
+
+    public ModelHandle(long pointer, Releaser releaser) {
+        this.pointer = pointer;
+        this.releaser = releaser;
+    }
+
+    public int getState() {
+        return state.get();
+    }
+
+    public int getLeaseCount() {
+        return leases.get();
+    }
+
+    /**
+     * Key of the reference (text and ref.wav fingerprint) the handle was conditioned with.
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * Whether a warm-up inference has already primed the native kernels of this handle.
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    public void setWarmedUp(boolean warmedUp) {
+        this.warmedUp = warmedUp;
+    }
+
+    /**
+     * Moves a loaded handle to READY. Returns false if it was drained while loading.
+     */
+    public boolean markReady() {
+        return state.compareAndSet(LOADING, READY);
+    }
+
+    /**
+     * Returns a lease on a READY handle, or null if it is loading, draining or freed.
+     */
+    public Lease acquire() {
+        return acquire(READY);
+    }
+
+    /**
+     * Lease for the loader, which has to call into the handle before it is READY.
+     */
+    Lease acquireLoading() {
+        return acquire(LOADING);
+    }
+
+    /**
+     * Stops handing out leases and frees the native handle as soon as no lease is open.
+     */
+    public void drain() {
+        int current;
+        do {
+            current = state.get();
+            if (current == DRAINING || current == FREED) return;
+        } while (!state.compareAndSet(current, DRAINING));
+
+        if (leases.get() == 0) freeOnce();
+    }
+
+    private Lease acquire(int expected) {
+        if (state.get() != expected) return null;
+
+        leases.incrementAndGet();
+        // A drain may have slipped in between the check and the increment
+        if (state.get() != expected) {
+            release();
+            return null;
+        }
+        return new Lease();
+    }
+
+    private void release() {
+        if (leases.decrementAndGet() == 0 && state.get() == DRAINING) freeOnce();
+    }
+
+    private void freeOnce() {
+        if (state.compareAndSet(DRAINING, FREED)) releaser.free(pointer);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Brings the model of a language into the {@link ModelPool} and keeps its reference conditioning
+ * up to date. A loaded handle is reused as long as the reference text and audio stay the same;
+ * when only those change, the reference is processed again without reloading the model.
+ */
+public class ModelManager {
+    private static final String TAG = "ModelManager";
+
+    public static final List<String> MODEL_KEYS = Arrays.asList(
+            "g2pW", "g2p_en", "vits", "ssl", "t2s_encoder", "t2s_fs_decoder", "t2s_s_decoder", "bert");
+    public static final String REFERENCE_KEY = "ref";
+
+    /**
+     * Where model files come from, e.g. a staged SAF folder.
+     */
+    public interface Source {
+        /**
+         * Local paths of every file in {@link #MODEL_KEYS} plus {@link #REFERENCE_KEY}, or null if
+         * the files are not available.
+         */
+        Map<String, String> stage(Lang lang, ParallelCopier.ProgressListener listener);
+
+        /**
+         * Local path of the current reference audio, or null if it is missing.
+         */
+        String stageReference(Lang lang);
+
+        /**
+         * Changes whenever the reference audio of {@code lang} is replaced.
+         */
+        String getReferenceFingerprint(Lang lang);
+    }
+
+    public interface Listener {
+        /**
+         * @param percent progress, or -1 if unknown
+         */
+        void onStatus(String text, int percent);
+
+        void onStatusCleared();
+
+        void onLoaded(Lang lang);
+
+        void onError(String message);
+    }
+
+    private final TtsEngine engine;
+    private final ModelPool pool;
+    private final Source source;
+    private final Listener listener;
+
+    public ModelManager(TtsEngine engine, ModelPool pool, Source source, Listener listener) {
+        this.engine = engine;
+        this.pool = pool;
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the model of {@code lang}, or if it is already loaded, re-processes only the reference
+     * when the reference text or audio changed since the handle was conditioned. Returns a lease
+     * on the ready handle, or null on failure.
+     */
+    public ModelHandle.Lease prepare(String refText, Lang lang, InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        ModelHandle.Lease lease = pool.acquire(lang);
+        if (lease == null) return load(refText, lang, ticket, trace);
+
+        String refAudioPath = source.stageReference(lang);
+        if (refAudioPath == null) {
+            lease.close();
+            listener.onError("Failed to load reference audio");
+            return null;
+        }
+
+        String reference = referenceKey(lang, refText);
+        if (reference.equals(lease.getHandle().getReference())) return lease;
+
+        listener.onStatus("Processing " + lang.name() + " reference audio", -1);
+        long begin = trace.begin();
+        boolean refSuccess = engine.processReference(lease.getPointer(), refAudioPath, refText, TtsEngine.langId(lang));
+        trace.end(Metrics.Stage.PROCESS_REFERENCE, begin);
+        listener.onStatusCleared();
+        if (!refSuccess) {
+            // The handle's conditioning is now undefined, so it cannot be reused
+            pool.remove(lang);
+            lease.close();
+            listener.onError("Reference audio processing failed");
+            return null;
+        }
+        lease.getHandle().setReference(reference);
+        return lease;
+    }
+
+    private String referenceKey(Lang lang, String refText) {
+        return source.getReferenceFingerprint(lang) + "\n" + refText;
+    }
+
+    private ModelHandle.Lease load(String refText, Lang lang, InferenceScheduler.Ticket ticket, Metrics.Trace trace) {
+        try {
+            listener.onStatus("Staging " + lang.name() + " models", 0);
+            long stagingBegin = trace.begin();
+            Map<String, String> modelFiles = source.stage(lang, (copied, total, bytesPerSecond) -> {
+                // Only what was actually copied counts towards the staging throughput
+                trace.stagedBytes = copied;
+                int percent = (int) (copied * 100 / Math.max(1, total));
+                listener.onStatus(String.format(Locale.US, "Staging %s models: %d%% (%.1f MB/s)",
+                        lang.name(), percent, bytesPerSecond / 1048576.0), percent);
+            });
+            trace.end(Metrics.Stage.STAGING, stagingBegin);
+            if (modelFiles == null || modelFiles.isEmpty()) {
+                listener.onStatusCleared();
+                listener.onError("Failed to load models from folder");
+                return null;
+            }
+
+            if (ticket.isCancelled()) {
+                // Staging is kept, only the expensive native load is skipped
+                listener.onStatusCleared();
+                return null;
+            }
+
+            listener.onStatus("Initializing " + lang.name() + " model", -1);
+            long stagedBytes = ModelPool.sizeOf(modelFiles.values());
+            pool.makeRoom(stagedBytes);
+            long rssBefore = ModelPool.readRss();
+            long initBegin = trace.begin();
+            long pointer = engine.load(modelFiles);
+            trace.end(Metrics.Stage.INIT_MODEL, initBegin);
+            if (pointer == 0L) {
+                listener.onStatusCleared();
+                listener.onError("Model initialization failed");
+                return null;
+            }
+
+            ModelHandle handle = new ModelHandle(pointer, engine::free);
+            boolean refSuccess;
+            listener.onStatus("Processing " + lang.name() + " reference audio", -1);
+            long refBegin = trace.begin();
+            try (ModelHandle.Lease loading = handle.acquireLoading()) {
+                refSuccess = engine.processReference(loading.getPointer(), modelFiles.get(REFERENCE_KEY), refText, TtsEngine.langId(lang));
+            }
+            trace.end(Metrics.Stage.PROCESS_REFERENCE, refBegin);
+            if (!refSuccess) {
+                handle.drain();
+                listener.onStatusCleared();
+                listener.onError("Reference audio processing failed");
+                return null;
+            }
+
+            handle.setReference(referenceKey(lang, refText));
+            handle.markReady();
+            ModelHandle.Lease lease = handle.acquire();
+            pool.put(lang, handle, ModelPool.estimateFootprint(stagedBytes, rssBefore, ModelPool.readRss()));
+            listener.onStatusCleared();
+            listener.onLoaded(lang);
+            return lease;
+
+        } catch (Exception e) {
+            CoreLog.e(TAG, "Error loading model", e);
+            listener.onStatusCleared();
+            listener.onError("Error: " + e.getMessage());
+            return null;
+        }
+    }
+}
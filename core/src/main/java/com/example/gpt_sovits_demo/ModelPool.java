@@ -0,0 +1,173 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps loaded model handles of several languages resident within a memory budget. Handles are
+ * kept in least-recently-used order and the coldest ones are drained when a new model would not
+ * fit or the system reports memory pressure. A drained handle is freed once its last lease is
+ * closed.
+ */
+public class ModelPool {
+    private static final String TAG = "ModelPool";
+
+    // Trim levels of android.content.ComponentCallbacks2
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    private static class Entry {
+        final ModelHandle handle;
+        final long footprint;
+
+        Entry(ModelHandle handle, long footprint) {
+            this.handle = handle;
+            this.footprint = footprint;
+        }
+    }
+
+    private final LinkedHashMap<Lang, Entry> entries = new LinkedHashMap<>(4, 0.75f, true);
+    private long budgetBytes;
+
+    public ModelPool(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict(0, null);
+    }
+
+    public synchronized long getBudget() {
+        return budgetBytes;
+    }
+
+    public synchronized boolean contains(Lang lang) {
+        return entries.containsKey(lang);
+    }
+
+    /**
+     * Returns a lease on the handle of {@code lang} and marks it as most recently used, or null if
+     * it is not loaded. The lease must be closed when the caller is done with the handle.
+     */
+    public synchronized ModelHandle.Lease acquire(Lang lang) {
+        Entry entry = entries.get(lang);
+        return entry != null ? entry.handle.acquire() : null;
+    }
+
+    /**
+     * Frees least-recently-used handles until {@code bytes} more fit into the budget.
+     */
+    public synchronized void makeRoom(long bytes) {
+        evict(bytes, null);
+    }
+
+    public synchronized void put(Lang lang, ModelHandle handle, long footprint) {
+        Entry previous = entries.put(lang, new Entry(handle, footprint));
+        if (previous != null && previous.handle != handle) previous.handle.drain();
+        evict(0, lang);
+    }
+
+    /**
+     * Drains the handle of {@code lang}; it is freed once in-flight work on it has finished.
+     */
+    public synchronized void remove(Lang lang) {
+        Entry entry = entries.remove(lang);
+        if (entry != null) entry.handle.drain();
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.handle.drain();
+        }
+        entries.clear();
+    }
+
+    public synchronized long getUsedBytes() {
+        long used = 0;
+        for (Entry entry : entries.values()) used += entry.footprint;
+        return used;
+    }
+
+    /**
+     * Reacts to {@code ComponentCallbacks2.onTrimMemory}: cold handles go first, and only the most
+     * recently used one survives until the system is about to kill the process.
+     */
+    public synchronized void onTrimMemory(int level) {
+        int keep;
+        if (level >= TRIM_MEMORY_COMPLETE) keep = 0;
+        else if (level >= TRIM_MEMORY_BACKGROUND
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) keep = 1;
+        else return;
+
+        List<Lang> cold = new ArrayList<>(entries.keySet());
+        for (int i = 0; i < cold.size() - keep; i++) {
+            CoreLog.i(TAG, "Trimming " + cold.get(i).name() + " at level " + level);
+            remove(cold.get(i));
+        }
+    }
+
+    private void evict(long incoming, Lang keep) {
+        long used = getUsedBytes();
+        Iterator<Map.Entry<Lang, Entry>> iterator = entries.entrySet().iterator();
+        while (used + incoming > budgetBytes && iterator.hasNext()) {
+            Map.Entry<Lang, Entry> next = iterator.next();
+            if (next.getKey() == keep) continue;
+
+            CoreLog.i(TAG, "Evicting " + next.getKey().name() + " to stay within " + (budgetBytes >> 20) + " MB");
+            used -= next.getValue().footprint;
+            iterator.remove();
+            next.getValue().handle.drain();
+        }
+    }
+
+    /**
+     * A handle costs at least the size of its model files; if the process grew by more than that
+     * while loading, the measured growth is used instead.
+     */
+    public static long estimateFootprint(long stagedBytes, long rssBefore, long rssAfter) {
+        return Math.max(stagedBytes, rssAfter - rssBefore);
+    }
+
+    public static long sizeOf(Collection<String> paths) {
+        long total = 0;
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                if (files != null) {
+                    for (File child : files) total += child.length();
+                }
+            } else {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Resident set size of this process in bytes, or 0 if it cannot be read.
+     */
+    public static long readRss() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            CoreLog.w(TAG, "Cannot read RSS: " + e.getMessage());
+        }
+        return 0;
+    }
+}
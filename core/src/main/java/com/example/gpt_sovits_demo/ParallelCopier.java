@@ -0,0 +1,205 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies files through {@link FileChannel}s on a bounded number of workers. Each copy is written
+ * to a {@code .part} file next to its target and renamed into place once complete, so an
+ * interrupted copy never looks finished. A task can ask for the SHA-256 of the content, which is
+ * computed chunk by chunk as it is copied, from data that was just written and is still in the
+ * page cache, instead of reading the whole file again once it is done.
+ */
+public class ParallelCopier {
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    public interface ProgressListener {
+        void onProgress(long copiedBytes, long totalBytes, long bytesPerSecond);
+    }
+
+    public interface Source {
+        FileChannel open() throws IOException;
+    }
+
+    /**
+     * One file to copy. A {@code size} of 0 means the provider did not report one, and the source
+     * is then copied until it ends.
+     */
+    public static class Task {
+        final Source source;
+        final File target;
+        final long size;
+        final boolean digest;
+        private volatile String hash;
+
+        public Task(Source source, File target, long size) {
+            this(source, target, size, false);
+        }
+
+        public Task(Source source, File target, long size, boolean digest) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        /**
+         * SHA-256 of the copied content in hex, once a digesting task has completed.
+         */
+        public String getHash() {
+            return hash;
+        }
+    }
+
+    private final int workers;
+
+    public ParallelCopier(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    public void copyAll(List<Task> tasks, ProgressListener listener) throws IOException {
+        if (tasks.isEmpty()) return;
+
+        long totalBytes = 0;
+        for (Task task : tasks) totalBytes += task.size;
+        Progress progress = new Progress(totalBytes, listener);
+
+        // Largest files first so one big model does not end up running alone at the tail
+        List<Task> sorted = new ArrayList<>(tasks);
+        sorted.sort((a, b) -> Long.compare(b.size, a.size));
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, sorted.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(sorted.size());
+            for (Task task : sorted) {
+                futures.add(pool.submit(() -> {
+                    copy(task, progress);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        progress.report(true);
+    }
+
+    private static void copy(Task task, Progress progress) throws IOException {
+        File partial = new File(task.target.getParentFile(), task.target.getName() + ".part");
+        try (FileChannel in = task.source.open();
+             FileChannel out = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            transfer(task, in, out, progress);
+        }
+        if (!partial.renameTo(task.target)) {
+            partial.delete();
+            throw new IOException("Failed to move " + partial.getName() + " into place");
+        }
+    }
+
+    private static void transfer(Task task, FileChannel in, FileChannel out, Progress progress) throws IOException {
+        MessageDigest digest = task.digest ? Hashes.sha256() : null;
+        ByteBuffer buffer = digest != null ? ByteBuffer.allocateDirect(BUFFER_SIZE) : null;
+        long position = 0;
+        while (position < task.size) {
+            long transferred = in.transferTo(position, Math.min(TRANSFER_CHUNK, task.size - position), out);
+            if (transferred <= 0) break;
+            if (digest != null) digestWritten(out, position, transferred, digest, buffer);
+            position += transferred;
+            progress.add(transferred);
+        }
+
+        // Pipes and some providers do not support transferTo, and without a size there is no end
+        // to transfer up to, so finish with block copies until the source ends
+        if (position < task.size || task.size <= 0) {
+            if (position > 0) in.position(position);
+            if (buffer == null) buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                int len = buffer.remaining();
+                if (digest != null) digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) out.write(buffer);
+                buffer.clear();
+                progress.add(len);
+            }
+        }
+        if (digest != null) task.hash = Hashes.toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the {@code length} bytes just transferred to {@code out} at {@code position}.
+     */
+    private static void digestWritten(FileChannel out, long position, long length, MessageDigest digest, ByteBuffer buffer)
+            throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = out.read(buffer, position);
+            if (read <= 0) throw new IOException("Copy ended while hashing it");
+            position += read;
+            buffer.flip();
+            digest.update(buffer);
+        }
+    }
+
+
+    private static class Progress {
+        private final long totalBytes;
+        private final ProgressListener listener;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong copiedBytes = new AtomicLong();
+        private final AtomicLong lastReport = new AtomicLong();
+
+        Progress(long totalBytes, ProgressListener listener) {
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        void add(long bytes) {
+            copiedBytes.addAndGet(bytes);
+            report(false);
+        }
+
+        void report(boolean force) {
+            if (listener == null) return;
+
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            if (!force && (now - last < PROGRESS_INTERVAL_MS * 1_000_000L || !lastReport.compareAndSet(last, now))) {
+                return;
+            }
+            long elapsed = Math.max(1, now - startNanos);
+            long copied = copiedBytes.get();
+            listener.onProgress(copied, totalBytes, copied * 1_000_000_000L / elapsed);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently played clips kept decoded, least recently used evicted first once the samples exceed
+ * a byte budget. An entry is dropped when its file's size or modification time has changed, so a
+ * reused history file name never plays stale audio.
+ */
+public class PcmCache {
+    private static final class Entry {
+        final AudioClip clip;
+        final long length;
+        final long lastModified;
+
+        Entry(AudioClip clip, long length, long lastModified) {
+            this.clip = clip;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        long bytes() {
+            return (long) clip.samples.length * 4;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private int hits;
+    private int misses;
+
+    public PcmCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized AudioClip get(File file) {
+        String key = file.getAbsolutePath();
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.length != file.length() || entry.lastModified != file.lastModified())) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.clip;
+    }
+
+    public synchronized void put(File file, AudioClip clip) {
+        Entry entry = new Entry(clip, file.length(), file.lastModified());
+        if (entry.bytes() > maxBytes) return;
+
+        remove(file.getAbsolutePath());
+        entries.put(file.getAbsolutePath(), entry);
+        bytes += entry.bytes();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes();
+            it.remove();
+        }
+    }
+
+    public synchronized void invalidate(File file) {
+        remove(file.getAbsolutePath());
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) bytes -= entry.bytes();
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store of synthesized WAV files. Results are keyed by a hash of everything that
+ * determines the audio, kept within a byte quota in least-recently-used order, and indexed in a
+ * small text file so the cache survives restarts. Stored files are hard links of the history file
+ * they were created from where possible, so a cached result takes no extra space until the
+ * history entry is deleted.
+ */
+public class ResultCache {
+    private static final String TAG = "ResultCache";
+    private static final String INDEX = "index.tsv";
+
+    private static class Entry {
+        final long size;
+        long lastAccess;
+        String historyPath;
+
+        Entry(long size, long lastAccess, String historyPath) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.historyPath = historyPath;
+        }
+    }
+
+    private final File dir;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long quotaBytes;
+    private long usedBytes;
+
+    public ResultCache(File dir, long quotaBytes) {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            CoreLog.w(TAG, "Failed to create " + dir.getAbsolutePath());
+        }
+        loadIndex();
+    }
+
+    public static String key(String... parts) {
+        return Hashes.key(parts);
+    }
+
+    /**
+     * Returns the stored audio for {@code key} and marks it as recently used, or null on a miss.
+     */
+    public synchronized File get(String key) {
+        Entry entry = entries.get(key);
+        File file = fileFor(key);
+        if (entry == null || !file.isFile()) {
+            if (entry != null) remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        saveIndex();
+        return file;
+    }
+
+    /**
+     * Path of the history file the result was last shown as, or null if unknown.
+     */
+    public synchronized String getHistoryPath(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.historyPath : null;
+    }
+
+    public synchronized void setHistoryPath(String key, String historyPath) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.historyPath = historyPath;
+            saveIndex();
+        }
+    }
+
+    public synchronized void put(String key, File wavFile) throws IOException {
+        File file = fileFor(key);
+        remove(key);
+        try {
+            Files.createLink(file.toPath(), wavFile.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(wavFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        entries.put(key, new Entry(file.length(), System.currentTimeMillis(), wavFile.getAbsolutePath()));
+        usedBytes += file.length();
+        evict();
+        saveIndex();
+    }
+
+    public synchronized void setQuota(long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+        evict();
+        saveIndex();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, key + ".wav");
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) usedBytes -= entry.size;
+        fileFor(key).delete();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > quotaBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            iterator.remove();
+            usedBytes -= next.getValue().size;
+            fileFor(next.getKey()).delete();
+        }
+    }
+
+    private void loadIndex() {
+        File index = new File(dir, INDEX);
+        if (!index.isFile()) return;
+
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] row = line.split("\t", 4);
+                if (row.length == 4 && isNumber(row[2])) {
+                    rows.add(row);
+                } else {
+                    CoreLog.w(TAG, "Skipping bad cache index row: " + line);
+                }
+            }
+        } catch (IOException e) {
+            CoreLog.w(TAG, "Ignoring unreadable cache index: " + e.getMessage());
+            return;
+        }
+
+        // Re-insert in access order so the least recently used entry is evicted first
+        rows.sort((a, b) -> Long.compare(Long.parseLong(a[2]), Long.parseLong(b[2])));
+        for (String[] row : rows) {
+            File file = fileFor(row[0]);
+            if (!file.isFile()) continue;
+            entries.put(row[0], new Entry(file.length(), Long.parseLong(row[2]), row[3].isEmpty() ? null : row[3]));
+            usedBytes += file.length();
+        }
+        evict();
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void saveIndex() {
+        File partial = new File(dir, INDEX + ".part");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(partial))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(entry.getKey() + "\t" + value.size + "\t" + value.lastAccess + "\t"
+                        + (value.historyPath != null ? value.historyPath : ""));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            CoreLog.w(TAG, "Failed to write cache index: " + e.getMessage());
+            return;
+        }
+        if (!partial.renameTo(new File(dir, INDEX))) {
+            CoreLog.w(TAG, "Failed to replace cache index");
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Splits mixed Cantonese/Mandarin/English text into runs of one language and spells out numbers,
+ * dates, times, currency and units in the language of their run, so each run can be sent to its
+ * own model.
+ * <p>
+ * Han characters belong to Mandarin when Mandarin was requested and to Cantonese otherwise, Latin
+ * letters to English. Digits, punctuation, currency prefixes and unit symbols after a number join a
+ * neighbouring run.
+ * User rules of the form {@code pattern = yue|zh|en}, one per line, override the script for
+ * everything a regular expression matches. Results are cached per input string.
+ */
+public class TextFrontEnd {
+    public static final class Run {
+        public final Lang lang;
+        public final String text;
+
+        Run(Lang lang, String text) {
+            this.lang = lang;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return lang + ":" + text;
+        }
+    }
+
+    private static final class Rule {
+        final Pattern pattern;
+        final Lang lang;
+
+        Rule(Pattern pattern, Lang lang) {
+            this.pattern = pattern;
+            this.lang = lang;
+        }
+    }
+
+    private static final Pattern UNIT_AFTER_NUMBER = Pattern.compile("(?<=\\d)\\s?(km|cm|mm|kg|mins?|hrs?|sec|m|g|°C)(?![A-Za-z])");
+    private static final Pattern ISO_DATE = Pattern.compile("(?<!\\d)(\\d{4})-(\\d{1,2})-(\\d{1,2})(?!\\d)");
+    private static final Pattern DAY_FIRST_DATE = Pattern.compile("(?<!\\d)(\\d{1,2})/(\\d{1,2})/(\\d{4})(?!\\d)");
+    private static final Pattern TIME = Pattern.compile("(?<!\\d)(\\d{1,2}):(\\d{2})(?!\\d)");
+    private static final Pattern CURRENCY = Pattern.compile("(?:(?<![A-Za-z])HK)?\\$\\s?(\\d+(?:,\\d{3})*(?:\\.\\d+)?)");
+    private static final Pattern PERCENT = Pattern.compile("(\\d+(?:,\\d{3})*(?:\\.\\d+)?)\\s?%");
+    private static final Pattern NUMBER_WITH_UNIT = Pattern.compile("(\\d+(?:,\\d{3})*(?:\\.\\d+)?)\\s?(km|cm|mm|kg|mins?|hrs?|sec|m|g|°C)(?![A-Za-z])");
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:,\\d{3})*(?:\\.\\d+)?");
+
+    private static final String[] EN_ONES = {"zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten",
+            "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen", "seventeen", "eighteen", "nineteen"};
+    private static final String[] EN_TENS = {"", "", "twenty", "thirty", "forty", "fifty", "sixty", "seventy", "eighty", "ninety"};
+    private static final String[] EN_SCALES = {"", " thousand", " million", " billion", " trillion"};
+    private static final String[] EN_MONTHS = {"January", "February", "March", "April", "May", "June", "July", "August",
+            "September", "October", "November", "December"};
+    private static final String CN_DIGITS = "零一二三四五六七八九";
+
+    /**
+     * Unit symbol to English singular, English plural, Cantonese and Mandarin.
+     */
+    private static final Map<String, String[]> UNITS = new LinkedHashMap<>();
+
+    static {
+        UNITS.put("km", new String[]{"kilometre", "kilometres", "公里", "公里"});
+        UNITS.put("m", new String[]{"metre", "metres", "米", "米"});
+        UNITS.put("cm", new String[]{"centimetre", "centimetres", "厘米", "厘米"});
+        UNITS.put("mm", new String[]{"millimetre", "millimetres", "毫米", "毫米"});
+        UNITS.put("kg", new String[]{"kilogram", "kilograms", "公斤", "公斤"});
+        UNITS.put("g", new String[]{"gram", "grams", "克", "克"});
+        UNITS.put("min", new String[]{"minute", "minutes", "分鐘", "分钟"});
+        UNITS.put("mins", UNITS.get("min"));
+        UNITS.put("hr", new String[]{"hour", "hours", "小時", "小时"});
+        UNITS.put("hrs", UNITS.get("hr"));
+        UNITS.put("sec", new String[]{"second", "seconds", "秒", "秒"});
+        UNITS.put("°C", new String[]{"degree Celsius", "degrees Celsius", "度", "度"});
+    }
+
+    private final int cacheSize;
+    private final Map<String, List<Run>> cache;
+    private List<Rule> rules = Collections.emptyList();
+
+    public TextFrontEnd(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<String, List<Run>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Run>> eldest) {
+                return size() > TextFrontEnd.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Replaces the user rules. Blank lines and lines starting with {@code #} are ignored.
+     *
+     * @throws IllegalArgumentException naming the first line that is not a valid rule
+     */
+    public synchronized void setRules(String text) {
+        List<Rule> parsed = new ArrayList<>();
+        String[] lines = text.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            int eq = line.lastIndexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Line " + (i + 1) + ": expected pattern = yue|zh|en");
+            try {
+                Lang lang = Lang.valueOf(line.substring(eq + 1).trim().toUpperCase(Locale.ROOT));
+                parsed.add(new Rule(Pattern.compile(line.substring(0, eq).trim()), lang));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getDescription());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": unknown language " + line.substring(eq + 1).trim());
+            }
+        }
+        rules = parsed;
+        cache.clear();
+    }
+
+    /**
+     * Language runs of {@code text} with numbers spelled out. {@code defaultLang} is the language
+     * the user asked for; it decides between Cantonese and Mandarin for Han characters and is used
+     * for text without any letters.
+     */
+    public synchronized List<Run> analyze(String text, Lang defaultLang) {
+        String key = defaultLang.name() + "\n" + text;
+        List<Run> runs = cache.get(key);
+        if (runs == null) {
+            runs = Collections.unmodifiableList(split(text, defaultLang));
+            cache.put(key, runs);
+        }
+        return runs;
+    }
+
+    /**
+     * The languages of {@code runs} in the order they should be synthesized: {@code resident}
+     * first if it is needed, then the others in order of appearance, so every model is prepared
+     * at most once per request.
+     */
+    public static List<Lang> workOrder(List<Run> runs, Lang resident) {
+        Set<Lang> order = new LinkedHashSet<>();
+        for (Run run : runs) {
+            if (run.lang == resident) order.add(resident);
+        }
+        for (Run run : runs) order.add(run.lang);
+        return new ArrayList<>(order);
+    }
+
+    private List<Run> split(String text, Lang defaultLang) {
+        int n = text.length();
+        Lang[] langs = new Lang[n];
+        Lang hanLang = defaultLang == Lang.ZH ? Lang.ZH : Lang.YUE;
+
+        for (int i = 0; i < n; ) {
+            int cp = text.codePointAt(i);
+            int len = Character.charCount(cp);
+            Lang lang = null;
+            if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                lang = hanLang;
+            } else if (Character.isLetter(cp) && Character.UnicodeScript.of(cp) == Character.UnicodeScript.LATIN) {
+                lang = Lang.EN;
+            }
+            for (int k = 0; k < len; k++) langs[i + k] = lang;
+            i += len;
+        }
+
+        // Unit symbols and currency prefixes belong to their number, not to English
+        Matcher units = UNIT_AFTER_NUMBER.matcher(text);
+        while (units.find()) {
+            for (int k = units.start(1); k < units.end(1); k++) langs[k] = null;
+        }
+        Matcher prices = CURRENCY.matcher(text);
+        while (prices.find()) {
+            for (int k = prices.start(); k < prices.start(1); k++) langs[k] = null;
+        }
+
+        // Rules win over script, earlier rules over later ones
+        boolean[] forced = new boolean[n];
+        for (Rule rule : rules) {
+            Matcher m = rule.pattern.matcher(text);
+            while (m.find()) {
+                if (m.end() == m.start()) continue;
+                boolean free = true;
+                for (int k = m.start(); k < m.end() && free; k++) free = !forced[k];
+                if (!free) continue;
+                for (int k = m.start(); k < m.end(); k++) {
+                    langs[k] = rule.lang;
+                    forced[k] = true;
+                }
+            }
+        }
+
+        assignNeutral(text, langs, defaultLang);
+
+        List<Run> runs = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || langs[i] != langs[start]) {
+                String normalized = normalize(text.substring(start, i), langs[start]).trim();
+                if (isSpeakable(normalized)) {
+                    Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                    if (last != null && last.lang == langs[start]) {
+                        runs.set(runs.size() - 1, new Run(last.lang, last.text + " " + normalized));
+                    } else {
+                        runs.add(new Run(langs[start], normalized));
+                    }
+                }
+                start = i;
+            }
+        }
+        return runs;
+    }
+
+    private static boolean isSpeakable(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives digits, punctuation and spaces the language of a neighbour. Between two languages,
+     * whatever follows the last space goes with the next run ("Exit A, 3號"), the rest with the
+     * previous one; without a space, a span ending in a digit goes with the next run.
+     */
+    private static void assignNeutral(String text, Lang[] langs, Lang defaultLang) {
+        int n = langs.length;
+        for (int i = 0; i < n; ) {
+            if (langs[i] != null) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < n && langs[j] == null) j++;
+
+            Lang prev = i > 0 ? langs[i - 1] : null;
+            Lang next = j < n ? langs[j] : null;
+            int split;
+            if (prev == null && next == null) {
+                prev = next = defaultLang;
+                split = j;
+            } else if (prev == null) {
+                split = i;
+            } else if (next == null) {
+                split = j;
+            } else {
+                split = j;
+                for (int k = j - 1; k >= i; k--) {
+                    if (Character.isWhitespace(text.charAt(k))) {
+                        split = k + 1;
+                        break;
+                    }
+                }
+                if (split == j && Character.isDigit(text.charAt(j - 1)) && !Character.isWhitespace(text.charAt(i))) {
+                    boolean spaced = false;
+                    for (int k = i; k < j && !spaced; k++) spaced = Character.isWhitespace(text.charAt(k));
+                    if (!spaced) split = i;
+                }
+            }
+            for (int k = i; k < split; k++) langs[k] = prev;
+            for (int k = split; k < j; k++) langs[k] = next;
+            i = j;
+        }
+    }
+
+    /**
+     * Spells out dates, times, currency, percentages, measurements and plain numbers in
+     * {@code lang}.
+     */
+    public static String normalize(String text, Lang lang) {
+        boolean en = lang == Lang.EN;
+        boolean yue = lang == Lang.YUE;
+
+        text = replace(ISO_DATE, text, m -> date(m.group(1), m.group(2), m.group(3), lang));
+        text = replace(DAY_FIRST_DATE, text, m -> date(m.group(3), m.group(2), m.group(1), lang));
+        text = replace(TIME, text, m -> {
+            int hour = Integer.parseInt(m.group(1));
+            int minute = Integer.parseInt(m.group(2));
+            if (hour > 24 || minute > 59) return null;
+            if (en) {
+                return englishInteger(hour) + (minute == 0 ? " o'clock" : minute < 10 ? " oh " + englishInteger(minute) : " " + englishInteger(minute));
+            }
+            return chineseInteger(hour, yue) + (yue ? "點" : "点") + (minute == 0 ? "" : minute == 30 ? "半" : chineseInteger(minute, yue) + "分");
+        });
+        text = replace(CURRENCY, text, m -> en
+                ? number(m.group(1), lang) + (m.group(1).equals("1") ? " dollar" : " dollars")
+                : number(m.group(1), lang) + (yue ? "蚊" : "元"));
+        text = replace(PERCENT, text, m -> en ? number(m.group(1), lang) + " percent" : "百分之" + number(m.group(1), lang));
+        text = replace(NUMBER_WITH_UNIT, text, m -> {
+            String[] unit = UNITS.get(m.group(2));
+            if (en) return number(m.group(1), lang) + " " + (m.group(1).equals("1") ? unit[0] : unit[1]);
+            return number(m.group(1), lang) + (yue ? unit[2] : unit[3]);
+        });
+        text = replace(NUMBER, text, m -> number(m.group(), lang));
+        return text;
+    }
+
+    private interface Replacer {
+        String replace(Matcher m);
+    }
+
+    private static String replace(Pattern pattern, String text, Replacer replacer) {
+        Matcher m = pattern.matcher(text);
+        if (!m.find()) return text;
+        StringBuffer sb = new StringBuffer();
+        do {
+            String replacement = replacer.replace(m);
+            m.appendReplacement(sb, Matcher.quoteReplacement(replacement != null ? replacement : m.group()));
+        } while (m.find());
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static String date(String year, String month, String day, Lang lang) {
+        int y = Integer.parseInt(year);
+        int mo = Integer.parseInt(month);
+        int d = Integer.parseInt(day);
+        if (mo < 1 || mo > 12 || d < 1 || d > 31) return null;
+
+        if (lang == Lang.EN) return EN_MONTHS[mo - 1] + " " + englishOrdinal(d) + ", " + englishYear(y);
+        return digitByDigit(year, lang) + "年" + chineseInteger(mo, lang == Lang.YUE) + "月"
+                + chineseInteger(d, lang == Lang.YUE) + (lang == Lang.YUE ? "號" : "日");
+    }
+
+    /**
+     * Reads {@code digits} (with optional thousands separators and decimals) as a number. Numbers
+     * with a leading zero or more than twelve digits, like phone numbers, are read digit by digit.
+     */
+    static String number(String digits, Lang lang) {
+        String plain = digits.replace(",", "");
+        int dot = plain.indexOf('.');
+        String integer = dot < 0 ? plain : plain.substring(0, dot);
+        if ((integer.length() > 1 && integer.charAt(0) == '0') || integer.length() > 12) return digitByDigit(plain, lang);
+
+        long value = Long.parseLong(integer);
+        String result = lang == Lang.EN ? englishInteger(value) : chineseInteger(value, lang == Lang.YUE);
+        if (dot >= 0 && dot + 1 < plain.length()) {
+            result += (lang == Lang.EN ? " point " : lang == Lang.YUE ? "點" : "点") + digitByDigit(plain.substring(dot + 1), lang);
+        }
+        return result;
+    }
+
+    private static String digitByDigit(String digits, Lang lang) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') continue;
+            if (lang == Lang.EN) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(c == '0' ? "oh" : EN_ONES[c - '0']);
+            } else {
+                sb.append(CN_DIGITS.charAt(c - '0'));
+            }
+        }
+        return sb.toString();
+    }
+
+    static String englishInteger(long value) {
+        if (value < 20) return EN_ONES[(int) value];
+        if (value < 100) return EN_TENS[(int) (value / 10)] + (value % 10 != 0 ? "-" + EN_ONES[(int) (value % 10)] : "");
+        if (value < 1000) return EN_ONES[(int) (value / 100)] + " hundred" + (value % 100 != 0 ? " and " + englishInteger(value % 100) : "");
+
+        StringBuilder sb = new StringBuilder();
+        long scale = 1_000_000_000_000L;
+        for (int s = 4; s >= 1; s--, scale /= 1000) {
+            long group = value / scale % 1000;
+            if (group == 0) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(englishInteger(group)).append(EN_SCALES[s]);
+        }
+        long rest = value % 1000;
+        if (rest != 0) sb.append(rest < 100 ? " and " : " ").append(englishInteger(rest));
+        return sb.toString();
+    }
+
+    private static String englishOrdinal(int value) {
+        String words = englishInteger(value);
+        int cut = Math.max(words.lastIndexOf(' '), words.lastIndexOf('-')) + 1;
+        String last = words.substring(cut);
+        String ordinal;
+        switch (last) {
+            case "one": ordinal = "first"; break;
+            case "two": ordinal = "second"; break;
+            case "three": ordinal = "third"; break;
+            case "five": ordinal = "fifth"; break;
+            case "eight": ordinal = "eighth"; break;
+            case "nine": ordinal = "ninth"; break;
+            case "twelve": ordinal = "twelfth"; break;
+            default: ordinal = last.endsWith("y") ? last.substring(0, last.length() - 1) + "ieth" : last + "th"; break;
+        }
+        return words.substring(0, cut) + ordinal;
+    }
+
+    private static String englishYear(int year) {
+        if (year < 1100 || year >= 2100 || (year >= 2000 && year < 2010)) return englishInteger(year);
+        int high = year / 100;
+        int low = year % 100;
+        return englishInteger(high) + (low == 0 ? " hundred" : low < 10 ? " oh " + englishInteger(low) : " " + englishInteger(low));
+    }
+
+    /**
+     * Chinese numeral for {@code value} below 10^16, in traditional characters for Cantonese.
+     */
+    static String chineseInteger(long value, boolean traditional) {
+        if (value == 0) return "零";
+        String[] big = traditional ? new String[]{"", "萬", "億", "兆"} : new String[]{"", "万", "亿", "兆"};
+        String[] small = {"千", "百", "十", ""};
+
+        StringBuilder sb = new StringBuilder();
+        boolean pendingZero = false;
+        for (int g = 3; g >= 0; g--) {
+            int group = (int) (value / (long) Math.pow(10000, g) % 10000);
+            if (group == 0) {
+                pendingZero = sb.length() > 0;
+                continue;
+            }
+            if (sb.length() > 0 && (pendingZero || group < 1000)) sb.append('零');
+            pendingZero = false;
+
+            boolean emitted = false;
+            boolean zero = false;
+            for (int p = 0, divisor = 1000; p < 4; p++, divisor /= 10) {
+                int digit = group / divisor % 10;
+                if (digit == 0) {
+                    zero = emitted;
+                    continue;
+                }
+                if (zero) sb.append('零');
+                zero = false;
+                emitted = true;
+                sb.append(CN_DIGITS.charAt(digit)).append(small[p]);
+            }
+            sb.append(big[g]);
+        }
+        // 一十二 is read 十二
+        if (sb.length() >= 2 && sb.charAt(0) == '一' && sb.charAt(1) == '十') sb.deleteCharAt(0);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits inference text into segments that can be synthesized one after another. Sentences are
+ * always split; clauses are split once a segment is long enough, so short phrases keep their
+ * natural prosody. The first segment is cut at the first boundary of any kind to get audio out
+ * as early as possible. Handles Cantonese, Mandarin and English punctuation.
+ */
+public class TextSegmenter {
+    private static final String SENTENCE_ENDS = "。！？!?；;…\n";
+    private static final String CLAUSE_ENDS = "，、,：:";
+    private static final String CLOSERS = "」』”’）)】\"'";
+    // Periods after these do not end a sentence. Case matters, "St." is Saint but "st." is not
+    private static final Set<String> ABBREVIATIONS = new HashSet<>(Arrays.asList(
+            "Mr", "Mrs", "Ms", "Dr", "Prof", "St", "Sr", "Jr", "Mt", "vs", "e.g", "i.e"));
+
+    private final int minClauseLength;
+
+    public TextSegmenter(int minClauseLength) {
+        this.minClauseLength = minClauseLength;
+    }
+
+    public List<String> split(String text) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            current.append(c);
+
+            boolean sentence = SENTENCE_ENDS.indexOf(c) >= 0 || (c == '.' && isSentencePeriod(text, i));
+            boolean clause = CLAUSE_ENDS.indexOf(c) >= 0 && !isNumberSeparator(text, i);
+            if (!sentence && !clause) continue;
+
+            // Keep closing quotes and brackets with the sentence they end
+            while (i + 1 < length && CLOSERS.indexOf(text.charAt(i + 1)) >= 0) {
+                current.append(text.charAt(++i));
+            }
+
+            if (sentence || segments.isEmpty() || speechLength(current) >= minClauseLength) {
+                add(segments, current);
+            }
+        }
+        add(segments, current);
+        return segments;
+    }
+
+    private static void add(List<String> segments, StringBuilder current) {
+        String segment = current.toString().trim();
+        current.setLength(0);
+        if (speechLength(segment) == 0) {
+            // Punctuation only, attach it to the previous segment
+            if (!segment.isEmpty() && !segments.isEmpty()) {
+                segments.set(segments.size() - 1, segments.get(segments.size() - 1) + segment);
+            }
+            return;
+        }
+        segments.add(segment);
+    }
+
+    private static int speechLength(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) count++;
+        }
+        return count;
+    }
+
+    private static boolean isSentencePeriod(String text, int i) {
+        // Not a decimal point or part of a URL
+        if (i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1))) return false;
+        int start = i;
+        while (start > 0 && (Character.isLetter(text.charAt(start - 1)) || text.charAt(start - 1) == '.')) start--;
+        return !ABBREVIATIONS.contains(text.substring(start, i));
+    }
+
+    private static boolean isNumberSeparator(String text, int i) {
+        // 1,000 and 10:30
+        return i > 0 && i + 1 < text.length()
+                && Character.isDigit(text.charAt(i - 1)) && Character.isDigit(text.charAt(i + 1));
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.gpt_sovits_demo;
+
+import java.util.Map;
+
+/**
+ * The synthesis backend. A model is identified by an opaque pointer that is only valid between
+ * {@link #load} and {@link #free}, and must only be used from one thread at a time.
+ */
+public interface TtsEngine {
+    /**
+     * Loads the model files keyed like {@link ModelManager#MODEL_KEYS}. Returns the model pointer,
+     * or 0 on failure.
+     */
+    long load(Map<String, String> modelFiles);
+
+    boolean processReference(long model, String refAudioPath, String refText, long langId);
+
+    /**
+     * Returns mono samples at the engine's sample rate, or null on failure.
+     */
+    float[] infer(long model, String text, long langId);
+
+    void free(long model);
+
+    static long langId(Lang lang) {
+        return lang != Lang.ZH ? 1L : 0L;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a RIFF/WAVE file into mono float samples. Handles the formats {@link WavWriter} produces
+ * as well as 8 and 32 bit integer PCM and WAVE_FORMAT_EXTENSIBLE headers; several channels are
+ * averaged. The sample data is mapped rather than copied through a stream.
+ */
+public class WavReader {
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /**
+     * Format and location of the sample data of a WAV file.
+     */
+    public static class Info {
+        public final int format;
+        public final int channels;
+        public final int sampleRate;
+        public final int bits;
+        public final long dataOffset;
+        public final long dataBytes;
+
+        Info(int format, int channels, int sampleRate, int bits, long dataOffset, long dataBytes) {
+            this.format = format;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.bits = bits;
+            this.dataOffset = dataOffset;
+            this.dataBytes = dataBytes;
+        }
+
+        public int getFrameBytes() {
+            return channels * bits / 8;
+        }
+
+        public long getFrames() {
+            return dataBytes / Math.max(1, getFrameBytes());
+        }
+
+        /**
+         * Whether the data is stored exactly as {@link WavWriter} would write it for {@code spec}.
+         */
+        public boolean matches(WavSpec spec) {
+            return format == spec.getFormatTag() && channels == spec.channels && sampleRate == spec.sampleRate
+                    && bits == spec.bitsPerSample;
+        }
+    }
+
+    public static AudioClip read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Info info = probe(channel, file.getName());
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, info.dataOffset, info.dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+            return new AudioClip(decode(data, info.format, info.channels, info.bits, file.getName()), info.sampleRate);
+        }
+    }
+
+    /**
+     * Whether the file open on {@code channel} starts like a RIFF/WAVE file.
+     */
+    public static boolean isWav(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() < header.capacity()) return false;
+        readFully(channel, header, 0);
+        return header.getInt(0) == 0x46464952 && header.getInt(8) == 0x45564157; // "RIFF", "WAVE"
+    }
+
+    /**
+     * Reads only the headers of the WAV file open on {@code channel}.
+     */
+    public static Info probe(FileChannel channel, String name) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            throw new IOException("Not a WAV file: " + name);
+        }
+
+        int format = 0, channels = 0, sampleRate = 0, bits = 0;
+        long pos = 12;
+        ByteBuffer chunk = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        while (pos + 8 <= channel.size()) {
+            chunk.clear().limit(8);
+            readFully(channel, chunk, pos);
+            int id = chunk.getInt(0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+
+            if (id == 0x20746d66) { // "fmt "
+                chunk.clear().limit((int) Math.min(size, chunk.capacity()));
+                readFully(channel, chunk, pos + 8);
+                format = chunk.getShort(0) & 0xFFFF;
+                channels = chunk.getShort(2) & 0xFFFF;
+                sampleRate = chunk.getInt(4);
+                bits = chunk.getShort(14) & 0xFFFF;
+                if (format == FORMAT_EXTENSIBLE && size >= 26) format = chunk.getShort(24) & 0xFFFF;
+            } else if (id == 0x61746164) { // "data"
+                if (channels == 0) throw new IOException("No fmt chunk before data in " + name);
+                return new Info(format, channels, sampleRate, bits, pos + 8, Math.min(size, channel.size() - pos - 8));
+            }
+            pos += 8 + size + (size & 1);
+        }
+        throw new IOException("No data chunk in " + name);
+    }
+
+    static float[] decode(ByteBuffer data, int format, int channels, int bits, String name) throws IOException {
+        int frameBytes = channels * bits / 8;
+        if (frameBytes == 0) throw new IOException("Bad block size in " + name);
+        int frames = data.remaining() / frameBytes;
+        int total = frames * channels;
+        float[] out = new float[total];
+
+        if (format == WavSpec.FORMAT_IEEE_FLOAT && bits == 32) {
+            data.asFloatBuffer().get(out);
+        } else if (format != WavSpec.FORMAT_PCM) {
+            throw new IOException("Unsupported WAV format " + format + " in " + name);
+        } else if (bits == 16) {
+            for (int i = 0; i < total; i++) out[i] = data.getShort() / 32768f;
+        } else if (bits == 24) {
+            for (int i = 0, pos = data.position(); i < total; i++, pos += 3) {
+                int value = (data.get(pos) & 0xFF) | (data.get(pos + 1) & 0xFF) << 8 | data.get(pos + 2) << 16;
+                out[i] = value / 8388608f;
+            }
+        } else if (bits == 32) {
+            for (int i = 0; i < total; i++) out[i] = data.getInt() / 2147483648f;
+        } else if (bits == 8) {
+            for (int i = 0; i < total; i++) out[i] = ((data.get() & 0xFF) - 128) / 128f;
+        } else {
+            throw new IOException("Unsupported bit depth " + bits + " in " + name);
+        }
+        if (channels == 1) return out;
+
+        float[] samples = new float[frames];
+        for (int i = 0, pos = 0; i < frames; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) sum += out[pos++];
+            samples[i] = sum / channels;
+        }
+        return samples;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of file");
+        }
+    }
+}
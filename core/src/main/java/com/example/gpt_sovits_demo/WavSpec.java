@@ -0,0 +1,44 @@
+package com.example.gpt_sovits_demo;
+
+public class WavSpec {
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+
+    public final int sampleRate;
+    public final int bitsPerSample;
+    public final int channels;
+    public final boolean floatingPoint;
+
+    public WavSpec(int sampleRate, int bitsPerSample, int channels) {
+        this(sampleRate, bitsPerSample, channels, false);
+    }
+
+    public WavSpec(int sampleRate, int bitsPerSample, int channels, boolean floatingPoint) {
+        if (floatingPoint ? bitsPerSample != 32 : bitsPerSample != 16 && bitsPerSample != 24) {
+            throw new IllegalArgumentException("Unsupported WAV format: " + bitsPerSample + " bit" + (floatingPoint ? " float" : " PCM"));
+        }
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.channels = channels;
+        this.floatingPoint = floatingPoint;
+    }
+
+    /**
+     * Output format for a bit depth chosen in settings: 16 or 24 bit PCM, or 32 bit float.
+     */
+    public static WavSpec forBits(int sampleRate, int bitsPerSample, int channels) {
+        return new WavSpec(sampleRate, bitsPerSample, channels, bitsPerSample == 32);
+    }
+
+    public int getFormatTag() {
+        return floatingPoint ? FORMAT_IEEE_FLOAT : FORMAT_PCM;
+    }
+
+    public int getBlockAlign() {
+        return channels * bitsPerSample / 8;
+    }
+
+    public int getByteRate() {
+        return sampleRate * getBlockAlign();
+    }
+}
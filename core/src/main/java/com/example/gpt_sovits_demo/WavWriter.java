@@ -0,0 +1,107 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes float samples as a RIFF/WAVE file. Samples are converted in fixed-size chunks into one
+ * reusable direct little-endian buffer and written through a {@link FileChannel}, so saving costs
+ * a handful of writes regardless of the utterance length.
+ */
+public class WavWriter {
+    private static final int CHUNK_SAMPLES = 16384;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SAMPLES * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+    public synchronized void write(File file, WavSpec spec, float[] samples) throws IOException {
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            writeHeader(channel, spec, (long) samples.length * (spec.bitsPerSample / 8));
+            writeSamples(channel, spec, samples, 0, samples.length);
+        }
+    }
+
+    public synchronized void writeSamples(FileChannel channel, WavSpec spec, float[] samples, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int start = offset; start < end; start += CHUNK_SAMPLES) {
+            int count = Math.min(CHUNK_SAMPLES, end - start);
+            buffer.clear();
+            encode(buffer, spec, samples, start, count);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes a header for {@code dataBytes} bytes of sample data at the channel's position.
+     */
+    public static void writeHeader(FileChannel channel, WavSpec spec, long dataBytes) throws IOException {
+        ByteBuffer header = header(spec, dataBytes);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    public static ByteBuffer header(WavSpec spec, long dataBytes) {
+        if (dataBytes > 0xFFFFFFFFL - 58) throw new IllegalArgumentException("WAV data too large: " + dataBytes);
+
+        // Float data needs the cbSize extension and a fact chunk to be read correctly everywhere
+        int fmtSize = spec.floatingPoint ? 18 : 16;
+        int factSize = spec.floatingPoint ? 12 : 0;
+        ByteBuffer header = ByteBuffer.allocate(getHeaderSize(spec)).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt((int) (4 + 8 + fmtSize + factSize + 8 + dataBytes));
+        header.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(fmtSize);
+        header.putShort((short) spec.getFormatTag());
+        header.putShort((short) spec.channels);
+        header.putInt(spec.sampleRate);
+        header.putInt(spec.getByteRate());
+        header.putShort((short) spec.getBlockAlign());
+        header.putShort((short) spec.bitsPerSample);
+        if (spec.floatingPoint) {
+            header.putShort((short) 0);
+            header.put(new byte[]{'f', 'a', 'c', 't'});
+            header.putInt(4);
+            header.putInt((int) (dataBytes / spec.getBlockAlign()));
+        }
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt((int) dataBytes);
+        header.flip();
+        return header;
+    }
+
+    public static int getHeaderSize(WavSpec spec) {
+        return spec.floatingPoint ? 58 : 44;
+    }
+
+    static void encode(ByteBuffer out, WavSpec spec, float[] samples, int offset, int count) {
+        int end = offset + count;
+        switch (spec.bitsPerSample) {
+            case 16:
+                for (int i = offset; i < end; i++) {
+                    out.putShort((short) Math.max(Math.min(samples[i] * 32767, 32767), -32768));
+                }
+                break;
+            case 24:
+                for (int i = offset; i < end; i++) {
+                    int value = (int) Math.max(Math.min(samples[i] * 8388607, 8388607), -8388608);
+                    out.put((byte) value);
+                    out.put((byte) (value >> 8));
+                    out.put((byte) (value >> 16));
+                }
+                break;
+            default:
+                for (int i = offset; i < end; i++) {
+                    out.putFloat(samples[i]);
+                }
+                break;
+        }
+    }
+}
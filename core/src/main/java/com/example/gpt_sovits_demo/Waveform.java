@@ -0,0 +1,215 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Min/max peaks of a clip for drawing its waveform. The finest level holds one pair per block of
+ * frames, with the block sized so a clip of any length has at most {@value #MAX_BLOCKS} pairs,
+ * and every further level halves the one below, so a view of any width reduces only about as
+ * many pairs as it has columns. Peaks are stored as signed bytes, two per block.
+ */
+public class Waveform {
+    static final int MIN_BLOCK_FRAMES = 256;
+    static final int MAX_BLOCKS = 2048;
+    private static final int MIN_LEVEL_BLOCKS = 32;
+    private static final int WINDOW_BYTES = 16 << 20;
+    private static final int MAGIC = 0x5756504b; // "WVPK"
+
+    public final int sampleRate;
+    public final long frames;
+    final int blockFrames;
+    private final List<byte[]> levels = new ArrayList<>();
+
+    Waveform(int sampleRate, long frames, int blockFrames, byte[] peaks) {
+        this.sampleRate = sampleRate;
+        this.frames = frames;
+        this.blockFrames = blockFrames;
+        levels.add(peaks);
+        while (peaks.length / 2 > MIN_LEVEL_BLOCKS) {
+            int blocks = peaks.length / 2;
+            byte[] coarser = new byte[(blocks + 1) / 2 * 2];
+            for (int i = 0; i < blocks; i += 2) {
+                int next = Math.min(i + 1, blocks - 1);
+                coarser[i] = (byte) Math.min(peaks[2 * i], peaks[2 * next]);
+                coarser[i + 1] = (byte) Math.max(peaks[2 * i + 1], peaks[2 * next + 1]);
+            }
+            levels.add(coarser);
+            peaks = coarser;
+        }
+    }
+
+    /**
+     * Peaks of decoded samples, for clips that are still in memory or are not WAV files.
+     */
+    public static Waveform of(float[] samples, int sampleRate) {
+        int blockFrames = blockFrames(samples.length);
+        int blocks = (int) ((samples.length + blockFrames - 1L) / blockFrames);
+        byte[] peaks = new byte[blocks * 2];
+        for (int b = 0; b < blocks; b++) {
+            float min = 0, max = 0;
+            for (int i = b * blockFrames, end = Math.min(i + blockFrames, samples.length); i < end; i++) {
+                float sample = samples[i];
+                if (sample < min) min = sample;
+                if (sample > max) max = sample;
+            }
+            peaks[2 * b] = quantize(min, false);
+            peaks[2 * b + 1] = quantize(max, true);
+        }
+        return new Waveform(sampleRate, samples.length, blockFrames, peaks);
+    }
+
+    /**
+     * Peaks of a WAV file, scanned through memory-mapped windows of the data chunk without copying
+     * it onto the heap. 16-bit mono PCM, the format of every synthesized clip, is scanned as raw
+     * shorts; other layouts are decoded a window at a time.
+     */
+    public static Waveform scan(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WavReader.Info info = WavReader.probe(channel, file.getName());
+            long frames = info.getFrames();
+            int frameBytes = info.getFrameBytes();
+            int blockFrames = blockFrames(frames);
+            int blocks = (int) ((frames + blockFrames - 1) / blockFrames);
+            byte[] peaks = new byte[blocks * 2];
+            boolean raw = info.format == WavSpec.FORMAT_PCM && info.bits == 16 && info.channels == 1;
+
+            // Whole blocks per window, so no block spans two mappings
+            long windowFrames = Math.max(1, WINDOW_BYTES / frameBytes / blockFrames) * blockFrames;
+            int block = 0;
+            for (long first = 0; first < frames; first += windowFrames) {
+                long count = Math.min(windowFrames, frames - first);
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, info.dataOffset + first * frameBytes,
+                        count * frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+                if (raw) {
+                    block = scanShorts(data.asShortBuffer(), blockFrames, peaks, block);
+                } else {
+                    float[] samples = WavReader.decode(data, info.format, info.channels, info.bits, file.getName());
+                    block = scanFloats(samples, blockFrames, peaks, block);
+                }
+            }
+            return new Waveform(info.sampleRate, frames, blockFrames, peaks);
+        }
+    }
+
+    private static int scanShorts(ShortBuffer data, int blockFrames, byte[] peaks, int block) {
+        int length = data.remaining();
+        for (int start = 0; start < length; start += blockFrames, block++) {
+            int min = 0, max = 0;
+            for (int i = start, end = Math.min(start + blockFrames, length); i < end; i++) {
+                int sample = data.get(i);
+                if (sample < min) min = sample;
+                if (sample > max) max = sample;
+            }
+            peaks[2 * block] = quantize(min / 32768f, false);
+            peaks[2 * block + 1] = quantize(max / 32768f, true);
+        }
+        return block;
+    }
+
+    private static int scanFloats(float[] samples, int blockFrames, byte[] peaks, int block) {
+        for (int start = 0; start < samples.length; start += blockFrames, block++) {
+            float min = 0, max = 0;
+            for (int i = start, end = Math.min(start + blockFrames, samples.length); i < end; i++) {
+                float sample = samples[i];
+                if (sample < min) min = sample;
+                if (sample > max) max = sample;
+            }
+            peaks[2 * block] = quantize(min, false);
+            peaks[2 * block + 1] = quantize(max, true);
+        }
+        return block;
+    }
+
+    /**
+     * Smallest power-of-two block, at least {@value #MIN_BLOCK_FRAMES} frames, that keeps the
+     * finest level within {@value #MAX_BLOCKS} blocks.
+     */
+    static int blockFrames(long frames) {
+        int blockFrames = MIN_BLOCK_FRAMES;
+        while ((frames + blockFrames - 1) / blockFrames > MAX_BLOCKS) blockFrames <<= 1;
+        return blockFrames;
+    }
+
+    private static byte quantize(float value, boolean up) {
+        double scaled = Math.max(-1f, Math.min(1f, value)) * 127;
+        return (byte) (up ? Math.ceil(scaled) : Math.floor(scaled));
+    }
+
+    public long getDurationMillis() {
+        return sampleRate > 0 ? frames * 1000 / sampleRate : 0;
+    }
+
+    /**
+     * Bytes the peaks take in memory.
+     */
+    public int getBytes() {
+        int bytes = 0;
+        for (byte[] level : levels) bytes += level.length;
+        return bytes;
+    }
+
+    /**
+     * Reduces the peaks to {@code columns} pairs, each scaled to [-1, 1], from the coarsest level
+     * that still has a block for every column.
+     */
+    public void render(int columns, float[] mins, float[] maxs) {
+        byte[] peaks = levels.get(0);
+        for (byte[] level : levels) {
+            if (level.length / 2 < columns) break;
+            peaks = level;
+        }
+        int blocks = peaks.length / 2;
+        for (int c = 0; c < columns; c++) {
+            if (blocks == 0) {
+                mins[c] = maxs[c] = 0;
+                continue;
+            }
+            int from = (int) ((long) c * blocks / columns);
+            int to = Math.max(from + 1, (int) ((long) (c + 1) * blocks / columns));
+            int min = 0, max = 0;
+            for (int b = from; b < to; b++) {
+                min = Math.min(min, peaks[2 * b]);
+                max = Math.max(max, peaks[2 * b + 1]);
+            }
+            mins[c] = min / 127f;
+            maxs[c] = max / 127f;
+        }
+    }
+
+    /**
+     * Writes the finest level; the coarser ones are rebuilt on {@link #read}.
+     */
+    void write(DataOutputStream out) throws IOException {
+        byte[] peaks = levels.get(0);
+        out.writeInt(MAGIC);
+        out.writeInt(sampleRate);
+        out.writeLong(frames);
+        out.writeInt(blockFrames);
+        out.writeInt(peaks.length);
+        out.write(peaks);
+    }
+
+    static Waveform read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a waveform file");
+        int sampleRate = in.readInt();
+        long frames = in.readLong();
+        int blockFrames = in.readInt();
+        int length = in.readInt();
+        if (blockFrames <= 0 || length < 0 || length > 2 * MAX_BLOCKS || length % 2 != 0) {
+            throw new IOException("Corrupt waveform file");
+        }
+        byte[] peaks = new byte[length];
+        in.readFully(peaks);
+        return new Waveform(sampleRate, frames, blockFrames, peaks);
+    }
+}
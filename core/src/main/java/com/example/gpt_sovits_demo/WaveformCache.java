@@ -0,0 +1,158 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Waveforms of history entries, kept in a small sidecar file per entry so the audio of a clip is
+ * read at most once, and the most recently shown ones in memory so scrolling back does not even
+ * touch the sidecars. Sidecars are named after the history entry id rather than the audio file,
+ * so they stay valid when a WAV entry is replaced by its FLAC copy.
+ */
+public class WaveformCache {
+    private static final String TAG = "WaveformCache";
+    private static final String SUFFIX = ".peaks";
+
+    private final File dir;
+    private final ClipMerger.Decoder decoder;
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Waveform> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    /**
+     * {@code decoder} reads the clips that are not WAV files.
+     */
+    public WaveformCache(File dir, ClipMerger.Decoder decoder, long maxBytes) {
+        this.dir = dir;
+        this.decoder = decoder;
+        this.maxBytes = maxBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            CoreLog.w(TAG, "Failed to create " + dir.getAbsolutePath());
+        }
+    }
+
+    /**
+     * The waveform of entry {@code id} if it is in memory. Cheap enough for the main thread.
+     */
+    public synchronized Waveform getCached(long id) {
+        return entries.get(id);
+    }
+
+    /**
+     * The waveform of entry {@code id}, from memory, its sidecar, or by scanning {@code audio}
+     * and writing the sidecar. A sidecar for a different number of {@code frames} is stale and
+     * replaced. Returns null if the audio cannot be read.
+     */
+    public Waveform load(long id, File audio, long frames) {
+        Waveform waveform = getCached(id);
+        if (waveform != null) return waveform;
+
+        File sidecar = fileFor(id);
+        if (sidecar.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+                waveform = Waveform.read(in);
+                if (frames > 0 && waveform.frames != frames) waveform = null;
+            } catch (IOException e) {
+                CoreLog.w(TAG, "Ignoring unreadable " + sidecar.getName() + ": " + e.getMessage());
+            }
+        }
+        if (waveform == null) {
+            try {
+                if (isWav(audio)) {
+                    waveform = Waveform.scan(audio);
+                } else {
+                    AudioClip clip = decoder.decode(audio);
+                    waveform = Waveform.of(clip.samples, clip.sampleRate);
+                }
+            } catch (IOException | RuntimeException e) {
+                CoreLog.w(TAG, "Failed to read " + audio.getName() + ": " + e.getMessage());
+                return null;
+            }
+            writeSidecar(id, waveform);
+        }
+        remember(id, waveform);
+        return waveform;
+    }
+
+    /**
+     * Stores the waveform of a new entry, computed from samples that are still in memory.
+     */
+    public void put(long id, Waveform waveform) {
+        writeSidecar(id, waveform);
+        remember(id, waveform);
+    }
+
+    public synchronized void remove(long id) {
+        Waveform waveform = entries.remove(id);
+        if (waveform != null) bytes -= waveform.getBytes();
+        fileFor(id).delete();
+    }
+
+    /**
+     * Deletes the sidecars of entries that are no longer in the history.
+     */
+    public synchronized void retainOnly(Set<Long> ids) {
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                if (ids.contains(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))) continue;
+            } catch (NumberFormatException e) {
+                // Not named after an entry, so nothing refers to it
+            }
+            file.delete();
+        }
+        entries.keySet().retainAll(ids);
+        bytes = 0;
+        for (Waveform waveform : entries.values()) bytes += waveform.getBytes();
+    }
+
+    private synchronized void remember(long id, Waveform waveform) {
+        Waveform previous = entries.put(id, waveform);
+        if (previous != null) bytes -= previous.getBytes();
+        bytes += waveform.getBytes();
+
+        Iterator<Map.Entry<Long, Waveform>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().getBytes();
+            it.remove();
+        }
+    }
+
+    private void writeSidecar(long id, Waveform waveform) {
+        File sidecar = fileFor(id);
+        File partial = new File(dir, sidecar.getName() + ".part");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+                waveform.write(out);
+            }
+            if (!partial.renameTo(sidecar)) throw new IOException("Failed to move " + partial.getName() + " into place");
+        } catch (IOException e) {
+            CoreLog.w(TAG, "Failed to write " + sidecar.getName() + ": " + e.getMessage());
+            partial.delete();
+        }
+    }
+
+    private static boolean isWav(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return WavReader.isWav(channel);
+        }
+    }
+
+    private File fileFor(long id) {
+        return new File(dir, id + SUFFIX);
+    }
+}
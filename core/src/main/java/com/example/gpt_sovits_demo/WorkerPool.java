@@ -0,0 +1,240 @@
+package com.example.gpt_sovits_demo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several handles of the same language, each owned by its own thread, for throughput on long jobs
+ * where one handle leaves most cores idle. Independent utterances or segments are queued and
+ * taken by whichever worker is free; callers get one future per text, so results can be put back
+ * in order whatever order they finish in. The handles are separate from the {@link ModelPool}, so
+ * interactive requests keep their own handle, and are freed when the pool is closed.
+ * <p>
+ * The engine offers no control over its intra-op threads, so workers only vary in number.
+ */
+public class WorkerPool implements AutoCloseable {
+    private static final String TAG = "WorkerPool";
+
+    public interface Loader {
+        /**
+         * Loads a model conditioned on the reference. Called on the worker's thread. Returns the
+         * pointer, or 0 on failure.
+         */
+        long load() throws Exception;
+    }
+
+    /**
+     * Throughput of one configuration, as measured by {@link #sweep}.
+     */
+    public static class Measurement {
+        public final int workers;
+        public final double charsPerSecond;
+
+        Measurement(int workers, double charsPerSecond) {
+            this.workers = workers;
+            this.charsPerSecond = charsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d worker(s): %.1f chars/s", workers, charsPerSecond);
+        }
+    }
+
+    private static final class Job {
+        final String text;
+        final CompletableFuture<float[]> future = new CompletableFuture<>();
+
+        Job(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final Job STOP = new Job(null);
+
+    private final TtsEngine engine;
+    private final long langId;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final CountDownLatch loaded;
+    private final AtomicInteger ready = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private volatile boolean closed;
+
+    public WorkerPool(TtsEngine engine, Lang lang, int workers, Loader loader) {
+        this.engine = engine;
+        this.langId = TtsEngine.langId(lang);
+        this.loaded = new CountDownLatch(workers);
+        this.remaining = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> run(loader), TAG + "-" + lang.name() + "-" + i);
+            this.workers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * How many handles of {@code footprint} bytes fit into {@code availableBytes}, at most
+     * {@code requested} and at least one.
+     */
+    public static int fit(int requested, long footprint, long availableBytes) {
+        long fitting = footprint > 0 ? availableBytes / footprint : requested;
+        return (int) Math.max(1, Math.min(requested, fitting));
+    }
+
+    /**
+     * Queues {@code text} for the next free worker.
+     */
+    public CompletableFuture<float[]> submit(String text) {
+        Job job = new Job(text);
+        if (closed) {
+            job.future.cancel(false);
+            return job.future;
+        }
+        queue.add(job);
+        // Closed in between, the workers may already be gone
+        if (closed && queue.remove(job)) job.future.cancel(false);
+        return job.future;
+    }
+
+    /**
+     * Synthesizes {@code texts} across the workers and returns the results in the same order.
+     */
+    public CompletableFuture<List<float[]>> submitAll(List<String> texts) {
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) futures.add(submit(text));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<float[]> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<float[]> future : futures) results.add(future.join());
+            return results;
+        });
+    }
+
+    /**
+     * Waits until every worker has loaded its handle or failed to, and returns how many are ready.
+     */
+    public int awaitReady() throws InterruptedException {
+        loaded.await();
+        return ready.get();
+    }
+
+    public int getWorkers() {
+        return workers.size();
+    }
+
+    /**
+     * Cancels queued texts and frees the handles once their current inference returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        failPending(null);
+        for (int i = 0; i < workers.size(); i++) queue.add(STOP);
+    }
+
+    /**
+     * Measures throughput on {@code texts} for 1 to {@code maxWorkers} workers. Loading is not
+     * timed. Stops early once adding a worker makes things slower or a pool does not load
+     * completely.
+     */
+    public static List<Measurement> sweep(TtsEngine engine, Lang lang, int maxWorkers, Loader loader,
+                                          List<String> texts) throws InterruptedException {
+        int chars = 0;
+        for (String text : texts) chars += text.length();
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (int n = 1; n <= maxWorkers; n++) {
+            try (WorkerPool pool = new WorkerPool(engine, lang, n, loader)) {
+                if (pool.awaitReady() < n) {
+                    CoreLog.w(TAG, "Only " + pool.ready.get() + " of " + n + " workers loaded, stopping sweep");
+                    break;
+                }
+                long begin = System.nanoTime();
+                pool.submitAll(texts).join();
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                Measurement measurement = new Measurement(n, chars / seconds);
+                CoreLog.i(TAG, "Sweep " + measurement);
+                measurements.add(measurement);
+                if (n > 1 && measurement.charsPerSecond < best(measurements).charsPerSecond) break;
+            } catch (RuntimeException e) {
+                CoreLog.e(TAG, "Sweep failed at " + n + " workers", e);
+                break;
+            }
+        }
+        return measurements;
+    }
+
+    /**
+     * The fastest of {@code measurements}, or null if there are none.
+     */
+    public static Measurement best(List<Measurement> measurements) {
+        Measurement best = null;
+        for (Measurement measurement : measurements) {
+            if (best == null || measurement.charsPerSecond > best.charsPerSecond) best = measurement;
+        }
+        return best;
+    }
+
+    private void run(Loader loader) {
+        ModelHandle handle = null;
+        try {
+            long pointer = loader.load();
+            if (pointer != 0L) {
+                handle = new ModelHandle(pointer, engine::free);
+                handle.markReady();
+                ready.incrementAndGet();
+            }
+        } catch (Exception e) {
+            CoreLog.e(TAG, "Worker failed to load", e);
+        } finally {
+            loaded.countDown();
+        }
+        if (handle == null) {
+            if (remaining.decrementAndGet() == 0) {
+                closed = true;
+                failPending(new IOException("No worker could load the model"));
+            }
+            return;
+        }
+
+        try (ModelHandle.Lease lease = handle.acquire()) {
+            while (true) {
+                Job job = queue.take();
+                if (job == STOP) break;
+                if (job.future.isDone()) continue;
+                try {
+                    float[] samples = engine.infer(lease.getPointer(), job.text, langId);
+                    if (samples != null) {
+                        job.future.complete(samples);
+                    } else {
+                        job.future.completeExceptionally(new IOException("Inference failed: " + job.text));
+                    }
+                } catch (RuntimeException e) {
+                    job.future.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (remaining.decrementAndGet() == 0) failPending(null);
+            handle.drain();
+        }
+    }
+
+    private void failPending(Exception error) {
+        List<Job> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Job job : pending) {
+            if (job == STOP) continue;
+            if (error != null) job.future.completeExceptionally(error);
+            else job.future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encodes and decodes again with a minimal decoder that covers what the encoder emits: one
+ * STREAMINFO block, mono frames, and constant, verbatim, fixed and LPC subframes.
+ */
+public class FlacEncoderTest {
+    private static final int SAMPLE_RATE = 32000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrips16Bit() throws Exception {
+        assertRoundTrip(16);
+    }
+
+    @Test
+    public void roundTrips24Bit() throws Exception {
+        assertRoundTrip(24);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFloat() throws Exception {
+        new FlacEncoder().write(folder.newFile(), WavSpec.forBits(SAMPLE_RATE, 32, 1), new float[16]);
+    }
+
+    private void assertRoundTrip(int bits) throws Exception {
+        // Speech-like tone with noise, a silent stretch for constant subframes, clipping, and a
+        // length that leaves a short last block
+        Random random = new Random(42);
+        float[] samples = new float[3 * 4096 + 1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (0.6 * Math.sin(i * 0.03) + 0.05 * random.nextGaussian());
+        }
+        Arrays.fill(samples, 4096, 2 * 4096, 0f);
+        samples[100] = 1.5f;
+        samples[101] = -1.5f;
+
+        File file = folder.newFile();
+        new FlacEncoder().write(file, WavSpec.forBits(SAMPLE_RATE, bits, 1), samples);
+
+        int[] expected = FlacEncoder.quantize(samples, bits);
+        Decoded decoded = decode(Files.readAllBytes(file.toPath()));
+        assertEquals(SAMPLE_RATE, decoded.sampleRate);
+        assertEquals(bits, decoded.bits);
+        assertArrayEquals(expected, decoded.pcm);
+        assertArrayEquals(decoded.md5, md5(expected, bits));
+    }
+
+    private static final class Decoded {
+        int sampleRate;
+        int bits;
+        int[] pcm;
+        byte[] md5;
+    }
+
+    private static Decoded decode(byte[] data) {
+        BitReader in = new BitReader(data);
+        assertEquals(0x664C6143, in.read(32)); // "fLaC"
+        assertEquals(1, in.read(1));
+        assertEquals(0, in.read(7));
+        assertEquals(34, in.read(24));
+        in.read(16);
+        in.read(16);
+        in.read(24);
+        in.read(24);
+
+        Decoded result = new Decoded();
+        result.sampleRate = in.read(20);
+        assertEquals(0, in.read(3));
+        result.bits = in.read(5) + 1;
+        long total = (long) in.read(4) << 32 | in.read(32) & 0xFFFFFFFFL;
+        result.md5 = new byte[16];
+        for (int i = 0; i < 16; i++) result.md5[i] = (byte) in.read(8);
+
+        result.pcm = new int[(int) total];
+        int position = 0;
+        while (position < total) position += decodeFrame(in, result.pcm, position, result.bits);
+        assertEquals(data.length * 8L, in.position);
+        return result;
+    }
+
+    private static int decodeFrame(BitReader in, int[] pcm, int offset, int bits) {
+        assertEquals(0x3FFE, in.read(14));
+        in.read(2);
+        int blockSizeCode = in.read(4);
+        in.read(4);
+        assertEquals(0, in.read(4));
+        in.read(3);
+        in.read(1);
+        int lead = in.read(8);
+        for (int continuation = Integer.numberOfLeadingZeros(~lead << 24); continuation > 1; continuation--) in.read(8);
+
+        int count;
+        if (blockSizeCode == 1) count = 192;
+        else if (blockSizeCode <= 5) count = 576 << (blockSizeCode - 2);
+        else if (blockSizeCode == 6) count = in.read(8) + 1;
+        else if (blockSizeCode == 7) count = in.read(16) + 1;
+        else count = 256 << (blockSizeCode - 8);
+        in.read(8); // CRC-8
+
+        assertEquals(0, in.read(1));
+        int type = in.read(6);
+        assertEquals(0, in.read(1));
+        if (type == 0) {
+            Arrays.fill(pcm, offset, offset + count, in.readSigned(bits));
+        } else if (type == 1) {
+            for (int i = 0; i < count; i++) pcm[offset + i] = in.readSigned(bits);
+        } else if (type >= 8 && type <= 12) {
+            int order = type - 8;
+            for (int i = 0; i < order; i++) pcm[offset + i] = in.readSigned(bits);
+            long[] residual = readResidual(in, count, order);
+            for (int i = order; i < count; i++) {
+                int p = offset + i;
+                long prediction;
+                switch (order) {
+                    case 0: prediction = 0; break;
+                    case 1: prediction = pcm[p - 1]; break;
+                    case 2: prediction = 2L * pcm[p - 1] - pcm[p - 2]; break;
+                    case 3: prediction = 3L * pcm[p - 1] - 3L * pcm[p - 2] + pcm[p - 3]; break;
+                    default: prediction = 4L * pcm[p - 1] - 6L * pcm[p - 2] + 4L * pcm[p - 3] - pcm[p - 4]; break;
+                }
+                pcm[p] = (int) (prediction + residual[i]);
+            }
+        } else if (type >= 32) {
+            int order = type - 31;
+            for (int i = 0; i < order; i++) pcm[offset + i] = in.readSigned(bits);
+            int precision = in.read(4) + 1;
+            int shift = in.readSigned(5);
+            int[] coefficients = new int[order];
+            for (int i = 0; i < order; i++) coefficients[i] = in.readSigned(precision);
+            long[] residual = readResidual(in, count, order);
+            for (int i = order; i < count; i++) {
+                int p = offset + i;
+                long sum = 0;
+                for (int j = 0; j < order; j++) sum += (long) coefficients[j] * pcm[p - 1 - j];
+                pcm[p] = (int) ((sum >> shift) + residual[i]);
+            }
+        } else {
+            throw new AssertionError("Unexpected subframe type " + type);
+        }
+
+        in.alignToByte();
+        in.read(16); // CRC-16
+        return count;
+    }
+
+    private static long[] readResidual(BitReader in, int count, int predictorOrder) {
+        assertEquals(0, in.read(2));
+        int partitionOrder = in.read(4);
+        int size = count >> partitionOrder;
+        long[] residual = new long[count];
+        for (int p = 0; p < 1 << partitionOrder; p++) {
+            int parameter = in.read(4);
+            for (int i = p == 0 ? predictorOrder : p * size; i < (p + 1) * size; i++) {
+                long quotient = 0;
+                while (in.read(1) == 0) quotient++;
+                long folded = quotient << parameter | (parameter > 0 ? in.read(parameter) : 0);
+                residual[i] = folded >>> 1 ^ -(folded & 1);
+            }
+        }
+        return residual;
+    }
+
+    private static byte[] md5(int[] pcm, int bits) throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (int value : pcm) {
+            for (int b = 0; b < bits / 8; b++) md5.update((byte) (value >> (8 * b)));
+        }
+        return md5.digest();
+    }
+
+    private static final class BitReader {
+        final byte[] data;
+        long position;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int read(int bits) {
+            int value = 0;
+            for (int i = 0; i < bits; i++, position++) {
+                value = value << 1 | (data[(int) (position >>> 3)] >> (7 - (int) (position & 7)) & 1);
+            }
+            return value;
+        }
+
+        int readSigned(int bits) {
+            return read(bits) << (32 - bits) >> (32 - bits);
+        }
+
+        void alignToByte() {
+            position = (position + 7) & ~7L;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HistoryIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File log;
+
+    @Before
+    public void setUp() {
+        log = new File(folder.getRoot(), "history.log");
+    }
+
+    @Test
+    public void dropsTornTailAndAppendsOnNewLine() throws IOException {
+        HistoryIndex index = load();
+        index.add("/a.wav", "first", Lang.EN, 32000, 32000, 64044);
+        index.add("/b.wav", "second", Lang.YUE, 16000, 32000, 32044);
+        append("A\t3\t-2\t0\tEN\t100");
+
+        index = load();
+        assertEquals(texts("second", "first"), texts(index));
+
+        index.add("/c.wav", "third", null, 100, 32000, 244);
+        assertEquals(texts("third", "second", "first"), texts(load()));
+    }
+
+    @Test
+    public void replaysSwaps() throws IOException {
+        HistoryIndex index = load();
+        long a = index.add("/a.wav", "a", Lang.EN, 1, 32000, 46).id;
+        long b = index.add("/b.wav", "b", Lang.EN, 1, 32000, 46).id;
+        long c = index.add("/c.wav", "c", Lang.EN, 1, 32000, 46).id;
+        index.swap(c, b);
+        index.swap(c, a);
+
+        assertEquals(texts("b", "a", "c"), texts(index));
+        assertEquals(texts("b", "a", "c"), texts(load()));
+    }
+
+    @Test
+    public void renumbersSwapCutShort() throws IOException {
+        HistoryIndex index = load();
+        long a = index.add("/a.wav", "a", Lang.EN, 1, 32000, 46).id;
+        index.add("/b.wav", "b", Lang.EN, 1, 32000, 46);
+        // Only the first half of a swap made it to disk, so both entries claim position -1
+        append("O\t" + a + "\t-1\n");
+
+        index = load();
+        assertEquals(2, index.size());
+        index.add("/c.wav", "c", Lang.EN, 1, 32000, 46);
+        assertEquals(3, load().size());
+    }
+
+    @Test
+    public void recoversReservedClips() throws IOException {
+        HistoryIndex index = load();
+        File written = new File(folder.getRoot(), "written.wav");
+        File missing = new File(folder.getRoot(), "missing.wav");
+        index.reserve(written.getAbsolutePath(), "written", Lang.ZH);
+        index.reserve(missing.getAbsolutePath(), "missing", null);
+        new WavWriter().write(written, WavSpec.forBits(32000, 16, 1), new float[320]);
+
+        index = load();
+        List<HistoryIndex.Entry> entries = index.page(0, 10);
+        assertEquals(1, entries.size());
+        assertEquals("written", entries.get(0).text);
+        assertEquals(Lang.ZH, entries.get(0).lang);
+        assertEquals(320, entries.get(0).samples);
+        assertFalse(missing.exists());
+        assertEquals(1, load().size());
+    }
+
+    private HistoryIndex load() throws IOException {
+        HistoryIndex index = new HistoryIndex(log);
+        index.load();
+        return index;
+    }
+
+    private void append(String text) throws IOException {
+        try (OutputStream out = new FileOutputStream(log, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> texts(HistoryIndex index) {
+        List<String> texts = new ArrayList<>();
+        for (HistoryIndex.Entry entry : index.page(0, index.size())) texts.add(entry.text);
+        return texts;
+    }
+
+    private static List<String> texts(String... texts) {
+        List<String> list = new ArrayList<>();
+        for (String text : texts) list.add(text);
+        return list;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class HistoryRecorderTest {
+    private static final int SAMPLE_RATE = 32000;
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HistoryIndex index;
+    private ResultCache results;
+    private final PcmCache pcmCache = new PcmCache(1 << 20);
+    private HistoryRecorder recorder;
+    private int changes;
+
+    @Before
+    public void setUp() throws IOException {
+        index = new HistoryIndex(folder.newFile("history.log"));
+        index.load();
+        results = new ResultCache(folder.newFolder("results"), 1 << 20);
+        WaveformCache waveforms = new WaveformCache(folder.newFolder("waveforms"), file -> {
+            throw new IOException("Not decoded in tests");
+        }, 1 << 20);
+        recorder = new HistoryRecorder(new HistoryStore(folder.newFolder("history")), index, waveforms, results, pcmCache,
+                DIRECT, DIRECT, DIRECT);
+        recorder.setListener(new HistoryRecorder.Listener() {
+            @Override
+            public void onHistoryChanged() {
+                changes++;
+            }
+
+            @Override
+            public void onError(String message) {
+                throw new AssertionError(message);
+            }
+        });
+    }
+
+    @Test
+    public void replacesSavedWavWithFlac() throws Exception {
+        AudioClip clip = new AudioClip(new float[SAMPLE_RATE / 10], SAMPLE_RATE);
+        Metrics.Trace trace = new Metrics.Trace("test", "EN");
+        File wav = recorder.save(clip, "hello", Lang.EN, WavSpec.forBits(SAMPLE_RATE, 16, 1), "key", true, trace)
+                .get(5, TimeUnit.SECONDS);
+
+        assertFalse(wav.exists());
+        assertTrue(trace.getStageNanos(Metrics.Stage.WAV_WRITE) >= 0);
+        assertEquals(2, changes);
+        List<HistoryIndex.Entry> entries = index.page(0, 10);
+        assertEquals(1, entries.size());
+        assertEquals(new File(wav.getParentFile(), "hello.flac").getAbsolutePath(), entries.get(0).path);
+        assertEquals(entries.get(0).path, results.getHistoryPath("key"));
+        assertNotNull(pcmCache.get(new File(entries.get(0).path)));
+        assertEquals(1, recorder.getFlacStats().getFiles());
+    }
+
+    @Test
+    public void keepsFloatAsWav() throws Exception {
+        AudioClip clip = new AudioClip(new float[SAMPLE_RATE / 10], SAMPLE_RATE);
+        File wav = recorder.save(clip, "hello", null, WavSpec.forBits(SAMPLE_RATE, 32, 1), null, true, new Metrics.Trace("test", "EN"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(wav.isFile());
+        assertEquals(1, changes);
+        assertEquals(wav.getAbsolutePath(), index.page(0, 10).get(0).path);
+        assertEquals(0, recorder.getFlacStats().getFiles());
+    }
+
+    @Test
+    public void restoresDeletedEntryOnce() throws Exception {
+        AudioClip clip = new AudioClip(new float[SAMPLE_RATE / 10], SAMPLE_RATE);
+        File wav = recorder.save(clip, "hello", Lang.EN, WavSpec.forBits(SAMPLE_RATE, 16, 1), "key", false, new Metrics.Trace("test", "EN"))
+                .get(5, TimeUnit.SECONDS);
+        index.remove(index.page(0, 1).get(0).id);
+        assertTrue(wav.delete());
+
+        File cached = results.get("key");
+        recorder.restore("key", cached, "hello", Lang.EN);
+        recorder.restore("key", cached, "hello", Lang.EN);
+
+        List<HistoryIndex.Entry> entries = index.page(0, 10);
+        assertEquals(1, entries.size());
+        assertEquals(entries.get(0).path, results.getHistoryPath("key"));
+        assertTrue(new File(entries.get(0).path).isFile());
+    }
+}
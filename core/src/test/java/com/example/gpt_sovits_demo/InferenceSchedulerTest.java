@@ -0,0 +1,106 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InferenceSchedulerTest {
+    private static final InferenceScheduler.Priority INTERACTIVE = InferenceScheduler.Priority.INTERACTIVE;
+
+    private final InferenceScheduler<String> scheduler = new InferenceScheduler<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void coalescesIdenticalRequests() throws Exception {
+        block(null, null);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Integer> first = scheduler.submit("lane", INTERACTIVE, "same", null, ticket -> runs.incrementAndGet());
+        CompletableFuture<Integer> second = scheduler.submit("lane", INTERACTIVE, "same", null, ticket -> runs.incrementAndGet());
+        assertSame(first, second);
+
+        release.countDown();
+        assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void cancelStopsRunningAndQueuedRequestsOfGroup() throws Exception {
+        CompletableFuture<Boolean> running = scheduler.submit("lane", INTERACTIVE, null, "group", ticket -> {
+            started.countDown();
+            while (!ticket.isCancelled()) Thread.sleep(1);
+            return true;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = scheduler.submit("lane", INTERACTIVE, null, "group", ticket -> false);
+        CompletableFuture<Boolean> other = scheduler.submit("lane", INTERACTIVE, null, "other", ticket -> true);
+
+        scheduler.cancel("group");
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertCancelled(queued);
+        assertTrue(other.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void keyedRequestSupersedesItsGroup() throws Exception {
+        block(null, "group");
+        CompletableFuture<String> older = scheduler.submit("lane", INTERACTIVE, "older", "group", ticket -> "older");
+        CompletableFuture<String> keyless = scheduler.submit("lane", INTERACTIVE, null, "group", ticket -> "keyless");
+        CompletableFuture<String> newer = scheduler.submit("lane", INTERACTIVE, "newer", "group", ticket -> "newer");
+
+        release.countDown();
+        assertEquals("newer", newer.get(5, TimeUnit.SECONDS));
+        assertCancelled(older);
+        assertCancelled(keyless);
+    }
+
+    @Test
+    public void keylessRequestDoesNotSupersede() throws Exception {
+        block(null, null);
+        CompletableFuture<String> keyed = scheduler.submit("lane", INTERACTIVE, "keyed", "group", ticket -> "keyed");
+        CompletableFuture<String> keyless = scheduler.submit("lane", INTERACTIVE, null, "group", ticket -> "keyless");
+
+        release.countDown();
+        assertEquals("keyed", keyed.get(5, TimeUnit.SECONDS));
+        assertEquals("keyless", keyless.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Occupies the lane until {@link #release} opens.
+     */
+    private void block(String key, String group) throws InterruptedException {
+        scheduler.submit("lane", INTERACTIVE, key, group, ticket -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void assertCancelled(CompletableFuture<?> future) throws InterruptedException, TimeoutException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (CancellationException e) {
+            return;
+        } catch (ExecutionException e) {
+            throw new AssertionError("Failed instead of being cancelled", e.getCause());
+        }
+        throw new AssertionError("Not cancelled");
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParallelCopierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hashesWhileTransferring() throws IOException {
+        File source = source(20 * 1024 * 1024 + 123);
+        assertCopied(source, source.length());
+    }
+
+    @Test
+    public void hashesSourceOfUnknownSize() throws IOException {
+        File source = source(3 * 1024 * 1024 + 7);
+        assertCopied(source, 0);
+    }
+
+    private void assertCopied(File source, long size) throws IOException {
+        File target = new File(folder.getRoot(), "target.bin");
+        ParallelCopier.Task task = new ParallelCopier.Task(() -> new FileInputStream(source).getChannel(), target, size, true);
+        new ParallelCopier(2).copyAll(Arrays.asList(task), null);
+
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+        assertEquals(BlobStore.hash(source), task.getHash());
+        assertFalse(new File(folder.getRoot(), "target.bin.part").exists());
+    }
+
+    private File source(int length) throws IOException {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        File file = folder.newFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+}
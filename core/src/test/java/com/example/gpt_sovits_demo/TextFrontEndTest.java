@@ -0,0 +1,31 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TextFrontEndTest {
+    private final TextFrontEnd frontEnd = new TextFrontEnd(16);
+
+    @Test
+    public void hongKongDollarsFollowTheirText() {
+        assertEquals("[YUE:一千二百蚊 同 百分之五十]", analyze("HK$1,200 同 50%", Lang.YUE));
+        assertEquals("[ZH:价格三十元]", analyze("价格HK$30", Lang.ZH));
+        assertEquals("[EN:It costs five dollars today]", analyze("It costs HK$5 today", Lang.YUE));
+    }
+
+    @Test
+    public void unitsFollowTheirNumber() {
+        assertEquals("[YUE:行五公里]", analyze("行5km", Lang.YUE));
+        assertEquals("[EN:Walk five kilometres]", analyze("Walk 5km", Lang.YUE));
+    }
+
+    @Test
+    public void splitsMixedText() {
+        assertEquals("[EN:Exit A,, YUE:三號出口]", analyze("Exit A, 3號出口", Lang.YUE));
+    }
+
+    private String analyze(String text, Lang lang) {
+        return frontEnd.analyze(text, lang).toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TextSegmenterTest {
+    private final TextSegmenter segmenter = new TextSegmenter(12);
+
+    @Test
+    public void keepsAbbreviationsAndDecimalsInSentence() {
+        assertEquals(Arrays.asList("Dr. Smith paid $3.50.", "Mrs. Lee met him at St. Paul's e.g. on Sundays."),
+                segmenter.split("Dr. Smith paid $3.50. Mrs. Lee met him at St. Paul's e.g. on Sundays."));
+    }
+
+    @Test
+    public void splitsSentencesAndLongClauses() {
+        assertEquals(Arrays.asList("Hello,", "this is the first clause of it,", "and this continues.", "我哋到咗。", "好！"),
+                segmenter.split("Hello, this is the first clause of it, and this continues. 我哋到咗。好！"));
+    }
+
+    @Test
+    public void keepsNumberSeparatorsAndClosers() {
+        assertEquals(Arrays.asList("「列車 10:30 開出。」", "Total 1,000 people."),
+                segmenter.split("「列車 10:30 開出。」Total 1,000 people."));
+    }
+}
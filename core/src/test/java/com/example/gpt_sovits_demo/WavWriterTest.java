@@ -0,0 +1,80 @@
+package com.example.gpt_sovits_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+public class WavWriterTest {
+    private static final float[] SAMPLES = {0f, 0.5f, -0.5f, 1f, -1f, 2f, -2f};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writes16BitPcm() throws IOException {
+        ByteBuffer wav = write(WavSpec.forBits(32000, 16, 1));
+
+        assertHeader(wav, 44, 16, WavSpec.FORMAT_PCM, 32000, 2, 16);
+        assertEquals(SAMPLES.length * 2, wav.getInt(40));
+        short[] expected = {0, 16383, -16383, 32767, -32767, 32767, -32768};
+        for (int i = 0; i < expected.length; i++) assertEquals("sample " + i, expected[i], wav.getShort(44 + 2 * i));
+    }
+
+    @Test
+    public void writes24BitPcm() throws IOException {
+        ByteBuffer wav = write(WavSpec.forBits(32000, 24, 1));
+
+        assertHeader(wav, 44, 16, WavSpec.FORMAT_PCM, 32000, 3, 24);
+        assertEquals(SAMPLES.length * 3, wav.getInt(40));
+        int[] expected = {0, 4194303, -4194303, 8388607, -8388607, 8388607, -8388608};
+        for (int i = 0; i < expected.length; i++) {
+            int p = 44 + 3 * i;
+            int value = (wav.get(p) & 0xFF) | (wav.get(p + 1) & 0xFF) << 8 | wav.get(p + 2) << 16;
+            assertEquals("sample " + i, expected[i], value);
+        }
+    }
+
+    @Test
+    public void writesFloatWithFactChunk() throws IOException {
+        ByteBuffer wav = write(WavSpec.forBits(32000, 32, 1));
+
+        assertHeader(wav, 58, 18, WavSpec.FORMAT_IEEE_FLOAT, 32000, 4, 32);
+        assertEquals(0, wav.getShort(36));
+        assertEquals(0x74636166, wav.getInt(38)); // "fact"
+        assertEquals(4, wav.getInt(42));
+        assertEquals(SAMPLES.length, wav.getInt(46));
+        assertEquals(0x61746164, wav.getInt(50)); // "data"
+        assertEquals(SAMPLES.length * 4, wav.getInt(54));
+        for (int i = 0; i < SAMPLES.length; i++) assertEquals("sample " + i, SAMPLES[i], wav.getFloat(58 + 4 * i), 0f);
+    }
+
+    private ByteBuffer write(WavSpec spec) throws IOException {
+        File file = folder.newFile();
+        new WavWriter().write(file, spec, SAMPLES);
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void assertHeader(ByteBuffer wav, int headerSize, int fmtSize, int format, int sampleRate, int blockAlign, int bits) {
+        assertEquals(headerSize + SAMPLES.length * blockAlign, wav.limit());
+        assertEquals(0x46464952, wav.getInt(0)); // "RIFF"
+        assertEquals(wav.limit() - 8, wav.getInt(4));
+        assertEquals(0x45564157, wav.getInt(8)); // "WAVE"
+        assertEquals(0x20746d66, wav.getInt(12)); // "fmt "
+        assertEquals(fmtSize, wav.getInt(16));
+        assertEquals(format, wav.getShort(20));
+        assertEquals(1, wav.getShort(22));
+        assertEquals(sampleRate, wav.getInt(24));
+        assertEquals(sampleRate * blockAlign, wav.getInt(28));
+        assertEquals(blockAlign, wav.getShort(32));
+        assertEquals(bits, wav.getShort(34));
+        if (headerSize == 44) assertEquals(0x61746164, wav.getInt(36)); // "data"
+    }
+}